@@ -0,0 +1,27 @@
+package jp.keita.kagurazaka.filteredobservablecollection.benchmark;
+
+import android.databinding.BaseObservable;
+
+/**
+ * Observable element whose value decides whether it passes a filter.
+ */
+public class BenchmarkItem extends BaseObservable {
+    static final int VALUE = 1;
+
+    private int value;
+
+    public BenchmarkItem(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public void setValue(int value) {
+        if (this.value != value) {
+            this.value = value;
+            notifyPropertyChanged(VALUE);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package jp.keita.kagurazaka.filteredobservablecollection.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.keita.kagurazaka.filteredobservablecollection.Filter;
+import jp.keita.kagurazaka.filteredobservablecollection.FilteredReadOnlyObservableList;
+
+/**
+ * Hot paths of {@link FilteredReadOnlyObservableList} over sources of various sizes and
+ * selectivities. Every operation leaves the list as it found it, or alternates between two
+ * states, so that the measured work does not drift between iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class FilteredListBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"10", "50", "90"})
+    public int selectivity;
+
+    private SourceList<BenchmarkItem> source;
+    private FilteredReadOnlyObservableList<BenchmarkItem> list;
+    private Filter<BenchmarkItem> filter;
+    private Filter<BenchmarkItem> otherFilter;
+    private BenchmarkItem toggledItem;
+    private List<BenchmarkItem> range;
+    private List<BenchmarkItem> otherRange;
+    private boolean toggled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new SourceList<>(Fixtures.items(size, 42));
+        filter = Fixtures.filter(selectivity, 0);
+        otherFilter = Fixtures.filter(selectivity, 50); // as selective, with other members
+        list = new FilteredReadOnlyObservableList<>(source, filter);
+        range = Fixtures.items(Fixtures.RANGE_SIZE, 7);
+        otherRange = Fixtures.items(Fixtures.RANGE_SIZE, 8);
+        source.replaceRange(size / 2, range);
+        toggledItem = source.get(size / 2 - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        list.close();
+    }
+
+    @Benchmark
+    public int setFilter() {
+        toggled = !toggled;
+        list.setFilter(toggled ? otherFilter : filter);
+        return list.size();
+    }
+
+    @Benchmark
+    public int toggleProperty() {
+        // alternates between passing and failing the filter
+        toggled = !toggled;
+        toggledItem.setValue(toggled ? selectivity : 0);
+        return list.size();
+    }
+
+    @Benchmark
+    public int insertAndRemoveRange() {
+        int index = size / 4;
+        source.insertRange(index, otherRange);
+        source.removeRange(index, index + otherRange.size());
+        return list.size();
+    }
+
+    @Benchmark
+    public int moveRange() {
+        int low = size / 4;
+        int high = size * 3 / 4;
+        toggled = !toggled;
+        if (toggled) {
+            source.move(low, high, Fixtures.RANGE_SIZE);
+        } else {
+            source.move(high - Fixtures.RANGE_SIZE, low, Fixtures.RANGE_SIZE);
+        }
+        return list.size();
+    }
+
+    @Benchmark
+    public int changeRange() {
+        toggled = !toggled;
+        source.replaceRange(size / 2, toggled ? otherRange : range);
+        return list.size();
+    }
+}
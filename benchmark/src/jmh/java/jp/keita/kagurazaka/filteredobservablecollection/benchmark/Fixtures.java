@@ -0,0 +1,50 @@
+package jp.keita.kagurazaka.filteredobservablecollection.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.PropertyAwareFilter;
+
+/**
+ * Sources and filters shared by the benchmarks.
+ */
+final class Fixtures {
+    static final int RANGE_SIZE = 100;
+
+    private static final int[] DEPENDENT_PROPERTY_IDS = {BenchmarkItem.VALUE};
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns items with values from 0 to 99 in a fixed random order, so that the members of a
+     * filter are scattered over the source.
+     */
+    static List<BenchmarkItem> items(int size, long seed) {
+        Random random = new Random(seed);
+        List<BenchmarkItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            items.add(new BenchmarkItem(random.nextInt(100)));
+        }
+        return items;
+    }
+
+    /**
+     * Returns a filter which passes {@code selectivity} percent of the items, i.e. those whose
+     * values are in [{@code offset}, {@code offset + selectivity}).
+     */
+    static PropertyAwareFilter<BenchmarkItem> filter(final int selectivity, final int offset) {
+        return new PropertyAwareFilter<BenchmarkItem>() {
+            @Override
+            public int[] getDependentPropertyIds() {
+                return DEPENDENT_PROPERTY_IDS;
+            }
+
+            @Override
+            public boolean execute(BenchmarkItem element) {
+                return (element.getValue() - offset + 100) % 100 < selectivity;
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package jp.keita.kagurazaka.filteredobservablecollection.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.keita.kagurazaka.filteredobservablecollection.Filter;
+import jp.keita.kagurazaka.filteredobservablecollection.FilteredReadOnlyObservableList;
+
+/**
+ * Construction and {@code close()} of {@link FilteredReadOnlyObservableList}, which subscribe to
+ * and unsubscribe from every element of the source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class LifecycleBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"10", "50", "90"})
+    public int selectivity;
+
+    private SourceList<BenchmarkItem> source;
+    private Filter<BenchmarkItem> filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new SourceList<>(Fixtures.items(size, 42));
+        filter = Fixtures.filter(selectivity, 0);
+    }
+
+    @Benchmark
+    public int constructAndClose() {
+        FilteredReadOnlyObservableList<BenchmarkItem> list
+                = new FilteredReadOnlyObservableList<>(source, filter);
+        list.close();
+        return list.size();
+    }
+
+    @Benchmark
+    public void close(final OpenedList opened) {
+        opened.list.close();
+    }
+
+    /**
+     * A list for {@link #close(OpenedList)} to close, opened before each invocation without
+     * being measured.
+     */
+    @State(Scope.Thread)
+    public static class OpenedList {
+        FilteredReadOnlyObservableList<BenchmarkItem> list;
+
+        @Setup(Level.Invocation)
+        public void open(final LifecycleBenchmark benchmark) {
+            list = new FilteredReadOnlyObservableList<>(benchmark.source, benchmark.filter);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package jp.keita.kagurazaka.filteredobservablecollection.benchmark;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Source list which notifies range operations as single notifications, including moves.
+ */
+public class SourceList<T> extends ArrayList<T> implements ObservableList<T> {
+    private final ListChangeRegistry registry = new ListChangeRegistry();
+
+    public SourceList(final List<T> items) {
+        super(items);
+    }
+
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback callback) {
+        registry.add(callback);
+    }
+
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback callback) {
+        registry.remove(callback);
+    }
+
+    public void insertRange(int index, final List<T> items) {
+        super.addAll(index, items);
+        registry.notifyInserted(this, index, items.size());
+    }
+
+    public void replaceRange(int index, final List<T> items) {
+        for (int i = 0; i < items.size(); ++i) {
+            super.set(index + i, items.get(i));
+        }
+        registry.notifyChanged(this, index, items.size());
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+        registry.notifyRemoved(this, fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Moves {@code itemCount} elements from {@code fromIndex} to {@code toIndex}, where
+     * {@code toIndex} is an index before the move.
+     */
+    public void move(int fromIndex, int toIndex, int itemCount) {
+        if (toIndex < fromIndex) {
+            Collections.rotate(subList(toIndex, fromIndex + itemCount), itemCount);
+        } else {
+            Collections.rotate(subList(fromIndex, toIndex), -itemCount);
+        }
+        registry.notifyMoved(this, fromIndex, toIndex, itemCount);
+    }
+}
@@ -0,0 +1,176 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.util.Arrays;
+
+/**
+ * Ordered log of list change notifications that merges each change into the previous one when
+ * the two describe a single contiguous range.
+ */
+final class ChangeLog {
+    static final int CHANGED = 0;
+    static final int INSERTED = 1;
+    static final int REMOVED = 2;
+    static final int MOVED = 3;
+
+    private static final int ENTRY_SIZE = 4;
+
+    private int[] entries = new int[ENTRY_SIZE * 4];
+    private int size;
+
+    /**
+     * Returns the number of notifications in this log.
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends a change of the specified type, merging it into the last one when possible.
+     */
+    void add(int type, int positionStart, int itemCount) {
+        add(type, positionStart, itemCount, 0);
+    }
+
+    /**
+     * Appends a move of {@code itemCount} elements from {@code fromPosition} to
+     * {@code toPosition}, where {@code toPosition} is an index before the move.
+     */
+    void addMove(int fromPosition, int toPosition, int itemCount) {
+        add(MOVED, fromPosition, itemCount, toPosition);
+    }
+
+    private void add(int type, int positionStart, int itemCount, int toPosition) {
+        if (itemCount <= 0) {
+            return;
+        }
+        if (size > 0 && type != MOVED && merge(type, positionStart, itemCount)) {
+            return;
+        }
+
+        int offset = size * ENTRY_SIZE;
+        if (offset + ENTRY_SIZE > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[offset] = type;
+        entries[offset + 1] = positionStart;
+        entries[offset + 2] = itemCount;
+        entries[offset + 3] = toPosition;
+        size++;
+    }
+
+    int typeAt(int index) {
+        return entries[index * ENTRY_SIZE];
+    }
+
+    int positionStartAt(int index) {
+        return entries[index * ENTRY_SIZE + 1];
+    }
+
+    int itemCountAt(int index) {
+        return entries[index * ENTRY_SIZE + 2];
+    }
+
+    int toPositionAt(int index) {
+        return entries[index * ENTRY_SIZE + 3];
+    }
+
+    /**
+     * Dispatches all notifications in this log to the specified registry in order.
+     */
+    void dispatch(final ListChangeRegistry registry, final ObservableList sender) {
+        for (int i = 0; i < size; ++i) {
+            dispatchAt(i, registry, sender);
+        }
+    }
+
+    /**
+     * Dispatches the notification at the specified index to the specified registry.
+     */
+    void dispatchAt(int index, final ListChangeRegistry registry, final ObservableList sender) {
+        int offset = index * ENTRY_SIZE;
+        int positionStart = entries[offset + 1];
+        int itemCount = entries[offset + 2];
+        switch (entries[offset]) {
+            case CHANGED:
+                registry.notifyChanged(sender, positionStart, itemCount);
+                break;
+            case INSERTED:
+                registry.notifyInserted(sender, positionStart, itemCount);
+                break;
+            case REMOVED:
+                registry.notifyRemoved(sender, positionStart, itemCount);
+                break;
+            case MOVED:
+                registry.notifyMoved(sender, positionStart, entries[offset + 3], itemCount);
+                break;
+            default:
+                throw new IllegalStateException("never reached");
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    private boolean merge(int type, int positionStart, int itemCount) {
+        int offset = (size - 1) * ENTRY_SIZE;
+        int lastType = entries[offset];
+        int lastStart = entries[offset + 1];
+        int lastCount = entries[offset + 2];
+        if (lastType == INSERTED && (type == CHANGED || type == REMOVED)
+                && lastStart <= positionStart
+                && positionStart + itemCount <= lastStart + lastCount) {
+            // a change of freshly inserted elements is implied by the insertion,
+            // and a removal of them cancels it out
+            if (type == REMOVED) {
+                entries[offset + 2] = lastCount - itemCount;
+                if (entries[offset + 2] == 0) {
+                    size--;
+                }
+            }
+            return true;
+        }
+        if (lastType != type) {
+            return false;
+        }
+
+        switch (type) {
+            case CHANGED:
+                if (positionStart > lastStart + lastCount
+                        || positionStart + itemCount < lastStart) {
+                    return false;
+                }
+                int start = Math.min(lastStart, positionStart);
+                int end = Math.max(lastStart + lastCount, positionStart + itemCount);
+                entries[offset + 1] = start;
+                entries[offset + 2] = end - start;
+                return true;
+            case INSERTED:
+                // an insertion into or right after the inserted range extends it
+                if (positionStart < lastStart || lastStart + lastCount < positionStart) {
+                    return false;
+                }
+                entries[offset + 2] = lastCount + itemCount;
+                return true;
+            case REMOVED:
+                if (positionStart == lastStart) {
+                    entries[offset + 2] = lastCount + itemCount;
+                    return true;
+                } else if (positionStart + itemCount == lastStart) {
+                    entries[offset + 1] = positionStart;
+                    entries[offset + 2] = lastCount + itemCount;
+                    return true;
+                }
+                return false;
+            default:
+                throw new IllegalStateException("never reached");
+        }
+    }
+}
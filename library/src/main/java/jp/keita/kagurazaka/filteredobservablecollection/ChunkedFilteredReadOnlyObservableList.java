@@ -0,0 +1,163 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.concurrent.Executor;
+
+/**
+ * Real-time filtered read-only {@link ObservableList} which keeps the filtered elements in chunks
+ * of bounded size.
+ * <p>
+ * An element appearing or disappearing near the top of a long list shifts only the elements of
+ * one chunk, so positional insertions, removals and {@link #get(int)} take O(log n) time where
+ * {@link FilteredReadOnlyObservableList} shifts the whole tail of its array. Apart from the
+ * storage, it behaves exactly as {@link FilteredReadOnlyObservableList}, whose methods of the same
+ * names are described there.
+ *
+ * @param <T> the type of elements
+ */
+public class ChunkedFilteredReadOnlyObservableList<T> extends AbstractList<T>
+        implements ObservableList<T>, Closeable {
+    private final ChunkedList<T> elements = new ChunkedList<>();
+    private final FilteredListCore<T> core;
+
+    /**
+     * Creates a new {@code ChunkedFilteredReadOnlyObservableList} instance with the specified
+     * filter.
+     *
+     * @param source an {@link ObservableList} to be filtered
+     * @param filter a filter which elements must pass
+     */
+    public ChunkedFilteredReadOnlyObservableList(final ObservableList<T> source,
+                                                 final Filter<T> filter) {
+        this(source, filter, null, 0);
+    }
+
+    /**
+     * Creates a new {@code ChunkedFilteredReadOnlyObservableList} instance with the specified
+     * filter, which evaluates the whole source in parallel as described in
+     * {@link FilteredReadOnlyObservableList#FilteredReadOnlyObservableList(ObservableList, Filter,
+     * Executor, int)}.
+     *
+     * @param source            an {@link ObservableList} to be filtered
+     * @param filter            a filter which elements must pass
+     * @param parallelExecutor  an executor which evaluates the chunks, or null to evaluate
+     *                          sequentially
+     * @param parallelThreshold the minimum size of the source to be evaluated in parallel
+     */
+    public ChunkedFilteredReadOnlyObservableList(final ObservableList<T> source,
+                                                 final Filter<T> filter,
+                                                 final Executor parallelExecutor,
+                                                 int parallelThreshold) {
+        core = new FilteredListCore<>(this, elements.asElements(), source, filter,
+                parallelExecutor, parallelThreshold);
+    }
+
+    @Override
+    public void close() {
+        core.close();
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setWeakSubscriptionEnabled(boolean)}.
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        core.setWeakSubscriptionEnabled(enabled);
+    }
+
+    /**
+     * Adds a callback to be notified when changes to the list occur.
+     *
+     * @param listener a callback to be added
+     */
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback listener) {
+        core.addOnListChangedCallback(listener);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param listener a callback to be removed
+     */
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback listener) {
+        core.removeOnListChangedCallback(listener);
+    }
+
+    @Override
+    public T get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#beginBatch()}.
+     */
+    public FilteredReadOnlyObservableList.Batch beginBatch() {
+        return core.beginBatch();
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#endBatch()}.
+     */
+    public void endBatch() {
+        core.endBatch();
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setFilter(Filter)}.
+     */
+    public void setFilter(final Filter<T> filter) {
+        core.setFilter(filter);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#refineFilter(Filter)}.
+     */
+    public void refineFilter(final Filter<T> filter) {
+        core.refineFilter(filter);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#relaxFilter(Filter)}.
+     */
+    public void relaxFilter(final Filter<T> filter) {
+        core.relaxFilter(filter);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setFilterAsync(Filter, Executor, Executor)}.
+     */
+    public void setFilterAsync(final Filter<T> filter, final Executor backgroundExecutor,
+                               final Executor mainExecutor) {
+        core.setFilterAsync(filter, backgroundExecutor, mainExecutor);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setFilterMemoEnabled(boolean)}.
+     */
+    public void setFilterMemoEnabled(boolean enabled) {
+        core.setFilterMemoEnabled(enabled);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setMetrics(FilterMetrics)}.
+     */
+    public void setMetrics(final FilterMetrics metrics) {
+        core.setMetrics(metrics);
+    }
+
+    /**
+     * See {@link FilteredReadOnlyObservableList#setLazySubscriptionEnabled(boolean)}.
+     */
+    public void setLazySubscriptionEnabled(boolean enabled) {
+        core.setLazySubscriptionEnabled(enabled);
+    }
+}
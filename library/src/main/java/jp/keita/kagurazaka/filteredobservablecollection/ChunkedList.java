@@ -0,0 +1,271 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List stored in chunks of bounded size.
+ * <p>
+ * A Fenwick tree over the chunk sizes locates the chunk of a position in O(log n) time, and a
+ * positional insertion or removal shifts only the elements of one chunk instead of the whole
+ * tail.
+ *
+ * @param <T> the type of elements
+ */
+final class ChunkedList<T> extends AbstractList<T> {
+    static final int MAX_CHUNK_SIZE = 512;
+
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private int[] tree = new int[1]; // 1-based, over the chunk sizes
+    private int size;
+    private int offset; // the offset in the chunk found by the last locate()
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index, size);
+        Chunk chunk = chunks.get(locate(index));
+        return (T) chunk.items[offset];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T set(int index, T element) {
+        checkIndex(index, size);
+        Chunk chunk = chunks.get(locate(index));
+        T previous = (T) chunk.items[offset];
+        chunk.items[offset] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        checkIndex(index, size + 1);
+        if (chunks.isEmpty()) {
+            insertChunk(0, new Chunk());
+        }
+
+        int chunkIndex = locateForInsertion(index);
+        if (chunks.get(chunkIndex).size == MAX_CHUNK_SIZE) {
+            split(chunkIndex);
+            chunkIndex = locateForInsertion(index);
+        }
+
+        Chunk chunk = chunks.get(chunkIndex);
+        System.arraycopy(chunk.items, offset, chunk.items, offset + 1, chunk.size - offset);
+        chunk.items[offset] = element;
+        resizeChunk(chunkIndex, 1);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T remove(int index) {
+        checkIndex(index, size);
+        int chunkIndex = locate(index);
+        Chunk chunk = chunks.get(chunkIndex);
+        T removed = (T) chunk.items[offset];
+        System.arraycopy(chunk.items, offset + 1, chunk.items, offset, chunk.size - offset - 1);
+        chunk.items[chunk.size - 1] = null;
+        resizeChunk(chunkIndex, -1);
+        size--;
+        modCount++;
+
+        mergeIfSparse(chunkIndex);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        rebuildTree();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Removes the elements in the range chunk by chunk, dropping the emptied chunks and merging
+     * the sparse ones at the edit point, and then rebuilds the tree once.
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        checkIndex(fromIndex, size);
+        checkIndex(toIndex - 1, size);
+
+        int firstChunk = locate(fromIndex);
+        int chunkIndex = firstChunk;
+        int start = offset;
+        int remaining = toIndex - fromIndex;
+        while (remaining > 0) {
+            Chunk chunk = chunks.get(chunkIndex);
+            int count = Math.min(remaining, chunk.size - start);
+            System.arraycopy(chunk.items, start + count, chunk.items, start,
+                    chunk.size - start - count);
+            for (int i = chunk.size - count; i < chunk.size; ++i) {
+                chunk.items[i] = null;
+            }
+            chunk.size -= count;
+            remaining -= count;
+            if (chunk.size == 0) {
+                chunks.remove(chunkIndex);
+            } else {
+                chunkIndex++;
+            }
+            start = 0;
+        }
+        size -= toIndex - fromIndex;
+        modCount++;
+
+        // only the chunks around the edit point may have become sparse
+        for (int i = Math.max(firstChunk - 1, 0); i <= firstChunk && i + 1 < chunks.size(); ) {
+            Chunk chunk = chunks.get(i);
+            Chunk next = chunks.get(i + 1);
+            if (chunk.size + next.size <= MAX_CHUNK_SIZE / 2) {
+                System.arraycopy(next.items, 0, chunk.items, chunk.size, next.size);
+                chunk.size += next.size;
+                chunks.remove(i + 1);
+            } else {
+                ++i;
+            }
+        }
+        rebuildTree();
+    }
+
+    /**
+     * Returns the view through which {@link FilteredPositions} updates this list.
+     */
+    FilteredPositions.Elements<T> asElements() {
+        return new FilteredPositions.Elements<T>() {
+            @Override
+            public void insert(int index, T item) {
+                add(index, item);
+            }
+
+            @Override
+            public void set(int index, T item) {
+                ChunkedList.this.set(index, item);
+            }
+
+            @Override
+            public void removeRange(int fromIndex, int toIndex) {
+                ChunkedList.this.removeRange(fromIndex, toIndex);
+            }
+
+            @Override
+            public void move(int fromIndex, int toIndex, int itemCount) {
+                List<T> moved = new ArrayList<>(subList(fromIndex, fromIndex + itemCount));
+                ChunkedList.this.removeRange(fromIndex, fromIndex + itemCount);
+                addAll(toIndex < fromIndex ? toIndex : toIndex - itemCount, moved);
+            }
+
+            @Override
+            public void clear() {
+                ChunkedList.this.clear();
+            }
+        };
+    }
+
+    // returns the index of the chunk which contains the element at the specified index
+    private int locate(int index) {
+        int position = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(chunks.size()); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= chunks.size() && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        offset = remaining;
+        return position;
+    }
+
+    // same as locate() except that the end of the list is located in the last chunk
+    private int locateForInsertion(int index) {
+        if (index == size) {
+            int last = chunks.size() - 1;
+            offset = chunks.get(last).size;
+            return last;
+        }
+        return locate(index);
+    }
+
+    private void split(int chunkIndex) {
+        Chunk lower = chunks.get(chunkIndex);
+        Chunk upper = new Chunk();
+        int half = MAX_CHUNK_SIZE / 2;
+        System.arraycopy(lower.items, half, upper.items, 0, MAX_CHUNK_SIZE - half);
+        for (int i = half; i < MAX_CHUNK_SIZE; ++i) {
+            lower.items[i] = null;
+        }
+        lower.size = half;
+        upper.size = MAX_CHUNK_SIZE - half;
+        insertChunk(chunkIndex + 1, upper);
+    }
+
+    // keeps the number of chunks in O(n / MAX_CHUNK_SIZE)
+    private void mergeIfSparse(int chunkIndex) {
+        Chunk chunk = chunks.get(chunkIndex);
+        if (chunk.size == 0) {
+            chunks.remove(chunkIndex);
+            rebuildTree();
+            return;
+        }
+
+        if (chunkIndex + 1 < chunks.size()) {
+            Chunk next = chunks.get(chunkIndex + 1);
+            if (chunk.size + next.size <= MAX_CHUNK_SIZE / 2) {
+                System.arraycopy(next.items, 0, chunk.items, chunk.size, next.size);
+                chunk.size += next.size;
+                chunks.remove(chunkIndex + 1);
+                rebuildTree();
+            }
+        }
+    }
+
+    private void insertChunk(int chunkIndex, final Chunk chunk) {
+        chunks.add(chunkIndex, chunk);
+        rebuildTree();
+    }
+
+    private void resizeChunk(int chunkIndex, int delta) {
+        chunks.get(chunkIndex).size += delta;
+        for (int i = chunkIndex + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // O(number of chunks), which is paid only when a chunk is split, merged or dropped
+    private void rebuildTree() {
+        int count = chunks.size();
+        tree = new int[count + 1];
+        for (int i = 1; i <= count; ++i) {
+            tree[i] += chunks.get(i - 1).size;
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static final class Chunk {
+        final Object[] items = new Object[MAX_CHUNK_SIZE];
+        int size;
+    }
+}
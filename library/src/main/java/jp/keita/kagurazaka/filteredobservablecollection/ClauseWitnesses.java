@@ -0,0 +1,80 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.Arrays;
+
+/**
+ * Clause of a {@link CompositeFilter} which decided the result for each source element.
+ * <p>
+ * The witnesses are kept per source position and follow the structural changes of the source,
+ * so that a witness leaves together with its element and no element is referenced after it has
+ * left the source.
+ */
+final class ClauseWitnesses {
+    static final int UNKNOWN = -1;
+
+    private int[] witnesses;
+    private int size;
+
+    /**
+     * Creates witnesses for the specified number of source elements, which are all unknown.
+     */
+    ClauseWitnesses(int size) {
+        witnesses = new int[Math.max(size, 16)];
+        Arrays.fill(witnesses, 0, size, UNKNOWN);
+        this.size = size;
+    }
+
+    /**
+     * Returns the deciding clause + 1 of the element at the specified source index, 0 if no
+     * clause decided the result, or {@link #UNKNOWN}.
+     */
+    int get(int sourceIndex) {
+        return witnesses[sourceIndex];
+    }
+
+    void set(int sourceIndex, int witness) {
+        witnesses[sourceIndex] = witness;
+    }
+
+    /**
+     * Inserts unknown witnesses for the source elements inserted at the specified index.
+     */
+    void insert(int positionStart, int itemCount) {
+        if (size + itemCount > witnesses.length) {
+            witnesses = Arrays.copyOf(witnesses, Math.max(size + itemCount, witnesses.length * 2));
+        }
+        System.arraycopy(witnesses, positionStart, witnesses, positionStart + itemCount,
+                size - positionStart);
+        Arrays.fill(witnesses, positionStart, positionStart + itemCount, UNKNOWN);
+        size += itemCount;
+    }
+
+    void remove(int positionStart, int itemCount) {
+        System.arraycopy(witnesses, positionStart + itemCount, witnesses, positionStart,
+                size - positionStart - itemCount);
+        size -= itemCount;
+    }
+
+    /**
+     * Moves the witnesses of the source elements moved from {@code fromPosition} to
+     * {@code toPosition}, where {@code toPosition} is an index before the move.
+     */
+    void move(int fromPosition, int toPosition, int itemCount) {
+        if (fromPosition <= toPosition && toPosition <= fromPosition + itemCount) {
+            return;
+        }
+        int[] moved = Arrays.copyOfRange(witnesses, fromPosition, fromPosition + itemCount);
+        remove(fromPosition, itemCount);
+        int index = toPosition < fromPosition ? toPosition : toPosition - itemCount;
+        System.arraycopy(witnesses, index, witnesses, index + itemCount, size - index);
+        System.arraycopy(moved, 0, witnesses, index, itemCount);
+        size += itemCount;
+    }
+
+    /**
+     * Marks the witnesses in the specified range as unknown.
+     */
+    void forget(int positionStart, int itemCount) {
+        Arrays.fill(witnesses, positionStart, positionStart + itemCount, UNKNOWN);
+    }
+}
@@ -0,0 +1,171 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Conjunction or disjunction of filters, created by {@link Filters#and(Filter[])} and
+ * {@link Filters#or(Filter[])}.
+ * <p>
+ * The clauses are evaluated in the order which is expected to decide the result with the least
+ * cost, and the evaluation stops at the first clause which decides it. When a composite filter
+ * is replaced by {@link #withClause(int, Filter)} of itself,
+ * {@link FilteredReadOnlyObservableList#setFilter(Filter)} evaluates again only the elements
+ * whose result may change.
+ *
+ * @param <T> the type of collection elements to be filtered
+ */
+public final class CompositeFilter<T> implements PropertyAwareFilter<T> {
+    private final boolean conjunction;
+    private final List<Filter<T>> clauses;
+    private final int[] order;
+    private final float cost;
+    private final float passRate;
+    private final int[] dependentPropertyIds;
+
+    CompositeFilter(boolean conjunction, final List<Filter<T>> clauses) {
+        if (clauses.isEmpty()) {
+            throw new IllegalArgumentException("clauses must not be empty.");
+        }
+        this.conjunction = conjunction;
+        this.clauses = new ArrayList<>(clauses);
+        this.order = sortByRank(conjunction, this.clauses);
+
+        // expected cost of evaluating in that order, and the ratio of elements passing
+        float expectedCost = 0;
+        float reachRate = 1; // the ratio of elements for which the result is not decided yet
+        for (final int index : order) {
+            Filter<T> clause = this.clauses.get(index);
+            expectedCost += reachRate * Filters.costOf(clause);
+            float clausePassRate = Filters.passRateOf(clause);
+            reachRate *= conjunction ? clausePassRate : 1 - clausePassRate;
+        }
+        this.cost = expectedCost;
+        this.passRate = conjunction ? reachRate : 1 - reachRate;
+        this.dependentPropertyIds = unionOfDependentPropertyIds(this.clauses);
+    }
+
+    /**
+     * Returns true if this filter is a conjunction, false if it is a disjunction.
+     */
+    public boolean isConjunction() {
+        return conjunction;
+    }
+
+    public int getClauseCount() {
+        return clauses.size();
+    }
+
+    public Filter<T> getClause(int index) {
+        return clauses.get(index);
+    }
+
+    /**
+     * Returns a filter of the same kind whose clause at the specified index is replaced.
+     *
+     * @param index  the index of the clause to be replaced
+     * @param clause a new clause
+     * @return the new composite filter
+     */
+    public CompositeFilter<T> withClause(int index, final Filter<T> clause) {
+        List<Filter<T>> newClauses = new ArrayList<>(clauses);
+        newClauses.set(index, clause);
+        return new CompositeFilter<>(conjunction, newClauses);
+    }
+
+    @Override
+    public boolean execute(T element) {
+        int clause = decidingClause(element);
+        return conjunction ? clause < 0 : clause >= 0;
+    }
+
+    @Override
+    public int[] getDependentPropertyIds() {
+        return dependentPropertyIds;
+    }
+
+    float getCost() {
+        return cost;
+    }
+
+    float getPassRate() {
+        return passRate;
+    }
+
+    /**
+     * Returns the index of the clause which decided the result for the specified element, i.e.
+     * the first failing clause of a conjunction or the first passing clause of a disjunction,
+     * or -1 if no clause decided it.
+     */
+    int decidingClause(T element) {
+        for (final int index : order) {
+            if (clauses.get(index).execute(element) != conjunction) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the only clause in which the specified filters differ, or -1 if they
+     * are not composite filters of the same kind and shape differing in exactly one clause.
+     */
+    static int indexOfReplacedClause(final Filter<?> oldFilter, final Filter<?> newFilter) {
+        if (!(oldFilter instanceof CompositeFilter) || !(newFilter instanceof CompositeFilter)) {
+            return -1;
+        }
+        CompositeFilter<?> oldComposite = (CompositeFilter<?>) oldFilter;
+        CompositeFilter<?> newComposite = (CompositeFilter<?>) newFilter;
+        if (oldComposite.conjunction != newComposite.conjunction
+                || oldComposite.clauses.size() != newComposite.clauses.size()) {
+            return -1;
+        }
+
+        int replaced = -1;
+        for (int i = 0; i < oldComposite.clauses.size(); ++i) {
+            if (oldComposite.clauses.get(i) != newComposite.clauses.get(i)) {
+                if (replaced >= 0) {
+                    return -1;
+                }
+                replaced = i;
+            }
+        }
+        return replaced;
+    }
+
+    // orders the clauses by cost per decided element, which minimizes the expected cost
+    private static <T> int[] sortByRank(boolean conjunction, final List<Filter<T>> clauses) {
+        int[] order = new int[clauses.size()];
+        float[] ranks = new float[clauses.size()];
+        for (int i = 0; i < order.length; ++i) {
+            Filter<T> clause = clauses.get(i);
+            float passRate = Filters.passRateOf(clause);
+            float decideRate = conjunction ? 1 - passRate : passRate;
+            ranks[i] = decideRate > 0 ? Filters.costOf(clause) / decideRate : Float.MAX_VALUE;
+
+            // insertion sort, keeping the given order for ties
+            int j = i;
+            while (j > 0 && ranks[order[j - 1]] > ranks[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    private static <T> int[] unionOfDependentPropertyIds(final List<Filter<T>> clauses) {
+        int[] union = new int[0];
+        for (final Filter<T> clause : clauses) {
+            int[] ids = Filters.dependentPropertyIdsOf(clause);
+            if (ids == null) {
+                return null;
+            }
+            int size = union.length;
+            union = Arrays.copyOf(union, size + ids.length);
+            System.arraycopy(ids, 0, union, size, ids.length);
+        }
+        return union;
+    }
+}
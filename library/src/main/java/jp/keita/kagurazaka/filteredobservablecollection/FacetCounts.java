@@ -0,0 +1,249 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Real-time numbers of elements of an {@link ObservableList} per facet key, e.g. per status or
+ * per tag.
+ * <p>
+ * Each element is mapped to its keys by an {@link Extractor}, and a change of the source costs
+ * work proportional to the keys of the changed elements only. The keys whose numbers changed
+ * through one change of the source are reported together to the callbacks.
+ *
+ * @param <T> the type of elements
+ * @param <K> the type of facet keys
+ */
+public class FacetCounts<T, K> implements Closeable {
+    private final ObservableList<T> source;
+    private final Extractor<T, K> extractor;
+    private final List<List<K>> sourceKeys = new ArrayList<>(); // the keys counted per element
+    private final Map<K, Integer> counts = new HashMap<>();
+    private final Map<K, Integer> previousCounts = new LinkedHashMap<>(); // of changed keys
+    private final List<OnCountsChangedCallback<K>> callbacks = new ArrayList<>();
+    private final SourceSubscription<T> subscription;
+
+    /**
+     * Creates a new {@code FacetCounts} instance with the specified extractor.
+     *
+     * @param source    an {@link ObservableList} whose elements are counted
+     * @param extractor an extractor which maps an element to its facet keys
+     */
+    public FacetCounts(final ObservableList<T> source, final Extractor<T, K> extractor) {
+        this.source = source;
+        this.extractor = extractor;
+
+        // setup
+        for (final T item : source) {
+            sourceKeys.add(count(item));
+        }
+        previousCounts.clear();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                for (final List<K> keys : sourceKeys) {
+                    uncount(keys);
+                }
+                sourceKeys.clear();
+                for (final T item : source) {
+                    sourceKeys.add(count(item));
+                }
+                notifyCountsChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                recount(positionStart, itemCount);
+                notifyCountsChanged();
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                List<List<K>> inserted = new ArrayList<>(itemCount);
+                for (int i = positionStart; i < positionStart + itemCount; ++i) {
+                    inserted.add(count(source.get(i)));
+                }
+                sourceKeys.addAll(positionStart, inserted);
+                notifyCountsChanged();
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                // the numbers do not depend on the order
+                if (toPosition < fromPosition) {
+                    Collections.rotate(sourceKeys.subList(toPosition, fromPosition + itemCount),
+                            itemCount);
+                } else {
+                    Collections.rotate(sourceKeys.subList(fromPosition, toPosition), -itemCount);
+                }
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                List<List<K>> removed = sourceKeys.subList(positionStart, positionStart + itemCount);
+                for (final List<K> keys : removed) {
+                    uncount(keys);
+                }
+                removed.clear();
+                notifyCountsChanged();
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                recount(sourceIndex, 1);
+                notifyCountsChanged();
+            }
+        });
+        subscription.open();
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Returns the number of elements which have the specified key.
+     *
+     * @param key a facet key
+     * @return the number of elements, or 0 if no element has the key
+     */
+    public int getCount(final K key) {
+        Integer count = counts.get(key);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Returns the keys which at least one element has.
+     */
+    public Set<K> getKeys() {
+        return Collections.unmodifiableSet(counts.keySet());
+    }
+
+    /**
+     * Adds a callback to be notified when the numbers change.
+     *
+     * @param callback a callback to be added
+     */
+    public void addOnCountsChangedCallback(final OnCountsChangedCallback<K> callback) {
+        callbacks.add(callback);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param callback a callback to be removed
+     */
+    public void removeOnCountsChangedCallback(final OnCountsChangedCallback<K> callback) {
+        callbacks.remove(callback);
+    }
+
+    private void recount(int positionStart, int itemCount) {
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            uncount(sourceKeys.get(i));
+            sourceKeys.set(i, count(source.get(i)));
+        }
+    }
+
+    private List<K> count(final T item) {
+        List<K> keys = new ArrayList<>(extractor.extract(item));
+        for (final K key : keys) {
+            add(key, 1);
+        }
+        return keys;
+    }
+
+    private void uncount(final List<K> keys) {
+        for (final K key : keys) {
+            add(key, -1);
+        }
+    }
+
+    private void add(final K key, int delta) {
+        int count = getCount(key);
+        if (!previousCounts.containsKey(key)) {
+            previousCounts.put(key, count);
+        }
+        if (count + delta == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count + delta);
+        }
+    }
+
+    private void notifyCountsChanged() {
+        if (previousCounts.isEmpty()) {
+            return;
+        }
+
+        // keys which got back to their previous numbers are not reported
+        Set<K> changedKeys = new LinkedHashSet<>();
+        for (final Map.Entry<K, Integer> entry : previousCounts.entrySet()) {
+            if (getCount(entry.getKey()) != entry.getValue()) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        previousCounts.clear();
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+
+        changedKeys = Collections.unmodifiableSet(changedKeys);
+        for (final OnCountsChangedCallback<K> callback : new ArrayList<>(callbacks)) {
+            callback.onCountsChanged(this, changedKeys);
+        }
+    }
+
+    /**
+     * Maps an element to its facet keys.
+     *
+     * @param <T> the type of elements
+     * @param <K> the type of facet keys
+     */
+    public interface Extractor<T, K> {
+        /**
+         * Returns the distinct facet keys of the specified element.
+         *
+         * @param element an element of the source
+         * @return the keys of the element
+         */
+        Collection<K> extract(T element);
+    }
+
+    /**
+     * Callback to be notified when the numbers of a {@link FacetCounts} change.
+     *
+     * @param <K> the type of facet keys
+     */
+    public interface OnCountsChangedCallback<K> {
+        /**
+         * Called once per change of the source with all keys whose numbers changed.
+         *
+         * @param sender the {@link FacetCounts} whose numbers changed
+         * @param keys   the keys whose numbers changed
+         */
+        void onCountsChanged(FacetCounts<?, K> sender, Set<K> keys);
+    }
+}
@@ -0,0 +1,34 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+/**
+ * Properties which the current filter of a list depends on.
+ * <p>
+ * The ids are read once per filter, so a {@link PropertyAwareFilter} which creates its array on
+ * every call is not asked again for each property change.
+ */
+final class FilterDependency {
+    private int[] dependentPropertyIds;
+
+    /**
+     * Reads the dependent properties of the specified filter, which becomes the current one.
+     */
+    void update(final Filter<?> filter) {
+        dependentPropertyIds = Filters.dependentPropertyIdsOf(filter);
+    }
+
+    /**
+     * Returns true if a change of the specified property may change the result of the current
+     * filter. A change of {@code BR._all} (0) always may.
+     */
+    boolean isDependentOn(int propertyId) {
+        if (dependentPropertyIds == null || propertyId == 0) {
+            return true;
+        }
+        for (final int id : dependentPropertyIds) {
+            if (id == propertyId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
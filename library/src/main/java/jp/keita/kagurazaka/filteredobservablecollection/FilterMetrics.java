@@ -0,0 +1,55 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+/**
+ * Receives measurements of the work done by a {@link FilteredReadOnlyObservableList}, installed
+ * by {@link FilteredReadOnlyObservableList#setMetrics(FilterMetrics)}.
+ * <p>
+ * The filter evaluations and the index maintenance of one change of the source or of one filter
+ * pass are reported together when it completes. All methods are called on the thread which
+ * modifies the source, and do nothing by default.
+ */
+public abstract class FilterMetrics {
+    public static final int CHANGED = ChangeLog.CHANGED;
+    public static final int INSERTED = ChangeLog.INSERTED;
+    public static final int REMOVED = ChangeLog.REMOVED;
+    public static final int MOVED = ChangeLog.MOVED;
+    public static final int RESET = 4;
+
+    /**
+     * Called with the number of filter evaluations and the time spent in them. Memoized
+     * verdicts are not counted, and evaluations on a background thread are not reported.
+     *
+     * @param evaluationCount the number of evaluations
+     * @param elapsedNanos    the time spent in the evaluations
+     */
+    public void onFilterExecuted(int evaluationCount, long elapsedNanos) {
+    }
+
+    /**
+     * Called with the time spent in updating the filtered elements and their positions.
+     *
+     * @param elapsedNanos the time spent in the updates
+     */
+    public void onIndexUpdated(long elapsedNanos) {
+    }
+
+    /**
+     * Called after a notification has been dispatched to the callbacks of the list.
+     *
+     * @param type         one of {@link #CHANGED}, {@link #INSERTED}, {@link #REMOVED},
+     *                     {@link #MOVED} and {@link #RESET}
+     * @param itemCount    the number of elements in the range, or 0 for {@link #RESET}
+     * @param elapsedNanos the time spent in the callbacks
+     */
+    public void onNotified(int type, int itemCount, long elapsedNanos) {
+    }
+
+    /**
+     * Called when a filter setter has applied a new filter, including the notifications.
+     *
+     * @param sourceSize   the number of elements of the source
+     * @param elapsedNanos the time spent in applying the filter
+     */
+    public void onFilterPassCompleted(int sourceSize, long elapsedNanos) {
+    }
+}
@@ -0,0 +1,139 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.BaseObservable;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+
+/**
+ * Real-time number of elements of an {@link ObservableList} which pass a filter.
+ * <p>
+ * Only the membership of each source element is kept, not the filtered elements themselves, and
+ * property change callbacks are notified only when the number changes.
+ *
+ * @param <T> the type of elements
+ */
+public class FilteredCount<T> extends BaseObservable implements Closeable {
+    private final ObservableList<T> source;
+    private final RankIndex members = new RankIndex();
+    private final SourceSubscription<T> subscription;
+    private Filter<T> filter;
+    private final FilterDependency dependency = new FilterDependency();
+    private int count;
+
+    /**
+     * Creates a new {@code FilteredCount} instance with the specified filter.
+     *
+     * @param source an {@link ObservableList} whose elements are counted
+     * @param filter a filter which counted elements must pass
+     */
+    public FilteredCount(final ObservableList<T> source, final Filter<T> filter) {
+        this.source = source;
+        updateFilter(filter);
+
+        // setup
+        rebuild();
+        count = members.count();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                rebuild();
+                notifyIfCountChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                evaluate(positionStart, itemCount);
+                notifyIfCountChanged();
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                members.insert(positionStart, itemCount);
+                evaluate(positionStart, itemCount);
+                notifyIfCountChanged();
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                members.move(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                members.remove(positionStart, itemCount);
+                notifyIfCountChanged();
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                if (dependency.isDependentOn(propertyId)) {
+                    evaluate(sourceIndex, 1);
+                    notifyIfCountChanged();
+                }
+            }
+        });
+        subscription.open();
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Returns the number of elements which pass the filter.
+     */
+    public int get() {
+        return count;
+    }
+
+    /**
+     * Sets the specified filter to this {@code FilteredCount}.
+     *
+     * @param filter a filter to be set
+     */
+    public void setFilter(final Filter<T> filter) {
+        updateFilter(filter);
+        evaluate(0, members.size());
+        notifyIfCountChanged();
+    }
+
+    private void updateFilter(final Filter<T> filter) {
+        this.filter = filter;
+        dependency.update(filter);
+    }
+
+    private void rebuild() {
+        members.resize(source.size());
+        for (int i = 0; i < members.size(); ++i) {
+            members.setQuietly(i, filter.execute(source.get(i)));
+        }
+        members.rebuild();
+    }
+
+    private void evaluate(int positionStart, int itemCount) {
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            members.set(i, filter.execute(source.get(i)));
+        }
+    }
+
+    private void notifyIfCountChanged() {
+        if (members.count() != count) {
+            count = members.count();
+            notifyChange();
+        }
+    }
+}
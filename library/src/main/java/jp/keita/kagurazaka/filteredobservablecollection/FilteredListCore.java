@@ -0,0 +1,675 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.Observable;
+import android.databinding.ObservableList;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Filtering shared by {@link FilteredReadOnlyObservableList} and
+ * {@link ChunkedFilteredReadOnlyObservableList}, which differ only in how they store the
+ * filtered elements.
+ * <p>
+ * Observes the source and its elements, keeps the elements of its owner in sync through
+ * {@link FilteredPositions}, and notifies the callbacks added to the owner. The public methods of
+ * the owners delegate to the methods of the same names.
+ *
+ * @param <T> the type of elements
+ */
+final class FilteredListCore<T> {
+    // more fragmented batches are dispatched as a single onChanged
+    private static final int MAX_BATCHED_NOTIFICATIONS = 16;
+
+    private final ObservableList<T> owner;
+    private final ObservableList<T> source;
+    private final FilteredPositions<T> positions;
+    private final SourceSubscription<T> subscription;
+    private Filter<T> filter;
+    private final FilterDependency dependency = new FilterDependency();
+    private ListChangeRegistry registry;
+    private final ChangeLog pendingChanges = new ChangeLog();
+    private int batchDepth;
+    private boolean pendingReset;
+    private ChangeLog spareChangeLog = new ChangeLog();
+    private volatile int filterGeneration; // a pass of an older generation is superseded
+    private IdentityHashMap<Object, Boolean> dirtyItems; // non-null while a pass is pending
+    private final Executor parallelExecutor;
+    private final int parallelThreshold;
+    private int filterVersion; // tags memoized verdicts
+    private boolean filterMemoEnabled;
+    private ClauseWitnesses witnesses; // null unless the filter is a CompositeFilter
+    private FilterMetrics metrics;
+    private int pendingEvaluations; // measured since the last report
+    private long pendingEvaluationNanos;
+    private long pendingIndexNanos;
+    private boolean lazySubscription;
+    private boolean detached; // not observing the source while lazily unobserved
+    private boolean closed;
+
+    FilteredListCore(final ObservableList<T> owner, final FilteredPositions.Elements<T> elements,
+                     final ObservableList<T> source, final Filter<T> filter,
+                     final Executor parallelExecutor, int parallelThreshold) {
+        this.owner = owner;
+        this.positions = new FilteredPositions<>(elements);
+        this.source = source;
+        this.parallelExecutor = parallelExecutor;
+        this.parallelThreshold = parallelThreshold;
+        updateFilter(filter);
+
+        // setup
+        rebuild();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                onChanged();
+                reportMetrics();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                onItemRangeChanged(positionStart, itemCount);
+                reportMetrics();
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                onItemRangeInserted(positionStart, itemCount);
+                reportMetrics();
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                onItemRangeMoved(fromPosition, toPosition, itemCount);
+                reportMetrics();
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                onItemRangeRemoved(positionStart, itemCount);
+                reportMetrics();
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                FilteredListCore.this.onItemPropertyChanged(sourceIndex, propertyId);
+                reportMetrics();
+            }
+        });
+        subscription.open();
+    }
+
+    void close() {
+        closed = true;
+        cancelFilterPass();
+        subscription.close();
+    }
+
+    void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    void addOnListChangedCallback(ObservableList.OnListChangedCallback listener) {
+        if (registry == null) {
+            registry = new ListChangeRegistry();
+        }
+        if (detached) {
+            attach();
+        }
+        registry.add(listener);
+    }
+
+    void removeOnListChangedCallback(ObservableList.OnListChangedCallback listener) {
+        if (registry != null) {
+            registry.remove(listener);
+            if (lazySubscription && registry.isEmpty()) {
+                detach();
+            }
+        }
+    }
+
+    FilteredReadOnlyObservableList.Batch beginBatch() {
+        batchDepth++;
+        return new FilteredReadOnlyObservableList.Batch() {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    endBatch();
+                }
+            }
+        };
+    }
+
+    void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch in progress.");
+        }
+        if (--batchDepth > 0) {
+            return;
+        }
+
+        if (registry != null) {
+            if (pendingReset) {
+                long start = startTiming();
+                registry.notifyChanged(owner);
+                reportNotification(FilterMetrics.RESET, 0, start);
+            } else {
+                dispatchChanges(pendingChanges);
+            }
+        }
+        pendingChanges.clear();
+        pendingReset = false;
+    }
+
+    void setFilter(final Filter<T> filter) {
+        if (deferIfDetached(filter)) {
+            return;
+        }
+        long start = startTiming();
+        cancelFilterPass();
+        int replacedClause = CompositeFilter.indexOfReplacedClause(this.filter, filter);
+        if (replacedClause >= 0) {
+            // the witnesses of the kept clauses stay valid for the new filter
+            ClauseWitnesses keptWitnesses = witnesses;
+            updateFilter(filter);
+            witnesses = keptWitnesses;
+            applyFilterResult(evaluateReplacedClause((CompositeFilter<T>) filter, replacedClause));
+        } else {
+            updateFilter(filter);
+            applyFilterResult(evaluate(filter));
+        }
+        reportFilterPass(start);
+    }
+
+    void refineFilter(final Filter<T> filter) {
+        if (deferIfDetached(filter)) {
+            return;
+        }
+        long start = startTiming();
+        cancelFilterPass();
+        updateFilter(filter);
+
+        boolean[] passed = new boolean[positions.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            passed[i] = positions.isMember(i) && execute(filter, i, source.get(i));
+        }
+        applyFilterResult(passed);
+        reportFilterPass(start);
+    }
+
+    void relaxFilter(final Filter<T> filter) {
+        if (deferIfDetached(filter)) {
+            return;
+        }
+        long start = startTiming();
+        cancelFilterPass();
+        updateFilter(filter);
+
+        boolean[] passed = new boolean[positions.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            passed[i] = positions.isMember(i) || execute(filter, i, source.get(i));
+        }
+        applyFilterResult(passed);
+        reportFilterPass(start);
+    }
+
+    void setFilterAsync(final Filter<T> filter, final Executor backgroundExecutor,
+                        final Executor mainExecutor) {
+        if (deferIfDetached(filter)) {
+            return;
+        }
+        cancelFilterPass();
+        final int generation = filterGeneration;
+        final Object[] snapshot = source.toArray();
+        dirtyItems = new IdentityHashMap<>();
+
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void run() {
+                final IdentityHashMap<Object, Boolean> verdicts
+                        = new IdentityHashMap<>(snapshot.length);
+                for (final Object item : snapshot) {
+                    if (generation != filterGeneration) {
+                        return; // superseded
+                    }
+                    verdicts.put(item, filter.execute((T) item));
+                }
+
+                mainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyFilterPass(generation, filter, verdicts);
+                    }
+                });
+            }
+        });
+    }
+
+    void setFilterMemoEnabled(boolean enabled) {
+        filterMemoEnabled = enabled;
+        if (!enabled) {
+            subscription.clearVerdicts();
+        }
+    }
+
+    void setMetrics(final FilterMetrics metrics) {
+        this.metrics = metrics;
+        pendingEvaluations = 0;
+        pendingEvaluationNanos = 0;
+        pendingIndexNanos = 0;
+    }
+
+    void setLazySubscriptionEnabled(boolean enabled) {
+        lazySubscription = enabled;
+        if (enabled && (registry == null || registry.isEmpty())) {
+            detach();
+        } else if (!enabled && detached) {
+            attach();
+        }
+    }
+
+    private void attach() {
+        if (closed) {
+            return;
+        }
+        detached = false;
+        subscription.open();
+        rebuild();
+        reportMetrics();
+    }
+
+    private void detach() {
+        if (detached || closed) {
+            return;
+        }
+        detached = true;
+        cancelFilterPass();
+        subscription.close();
+        // the deciding clauses may change unobserved
+        witnesses = null;
+    }
+
+    // a detached list only keeps the filter, which is applied when it is attached again
+    private boolean deferIfDetached(final Filter<T> filter) {
+        if (!detached) {
+            return false;
+        }
+        cancelFilterPass();
+        updateFilter(filter);
+        return true;
+    }
+
+    private void cancelFilterPass() {
+        filterGeneration++;
+        dirtyItems = null;
+    }
+
+    // reconciles the verdicts on the snapshot with the source mutated in the meantime
+    private void applyFilterPass(int generation, final Filter<T> filter,
+                                 final IdentityHashMap<Object, Boolean> verdicts) {
+        if (generation != filterGeneration) {
+            return; // superseded while waiting for the main thread
+        }
+        long start = startTiming();
+        IdentityHashMap<Object, Boolean> dirty = dirtyItems;
+        dirtyItems = null;
+        updateFilter(filter);
+
+        boolean[] passed = new boolean[positions.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            T item = source.get(i);
+            Boolean verdict = dirty.containsKey(item) ? null : verdicts.get(item);
+            passed[i] = verdict != null ? verdict : execute(filter, i, item);
+        }
+        applyFilterResult(passed);
+        reportFilterPass(start);
+    }
+
+    private Filter<T> getFilter() {
+        return filter;
+    }
+
+    private void updateFilter(final Filter<T> filter) {
+        if (filter != this.filter) {
+            filterVersion++;
+            witnesses = filter instanceof CompositeFilter
+                    ? new ClauseWitnesses(source.size()) : null;
+        }
+        this.filter = filter;
+        dependency.update(filter);
+    }
+
+    // consults the memo only for the current filter and Observable elements
+    private boolean execute(final Filter<T> filter, int sourceIndex, final T item) {
+        if (!filterMemoEnabled || filter != this.filter || !(item instanceof Observable)) {
+            return executeFilter(filter, sourceIndex, item);
+        }
+
+        Observable observable = (Observable) item;
+        int verdict = subscription.getVerdict(observable, filterVersion);
+        if (verdict >= 0) {
+            return verdict == 1;
+        }
+        boolean passed = executeFilter(filter, sourceIndex, item);
+        subscription.putVerdict(observable, filterVersion, passed);
+        return passed;
+    }
+
+    private boolean executeFilter(final Filter<T> filter, int sourceIndex, final T item) {
+        if (metrics == null) {
+            return executeComposite(filter, sourceIndex, item);
+        }
+
+        long start = System.nanoTime();
+        boolean passed = executeComposite(filter, sourceIndex, item);
+        pendingEvaluationNanos += System.nanoTime() - start;
+        pendingEvaluations++;
+        return passed;
+    }
+
+    // records which clause of the current composite filter decided the result
+    private boolean executeComposite(final Filter<T> filter, int sourceIndex, final T item) {
+        if (filter != this.filter || witnesses == null) {
+            return filter.execute(item);
+        }
+
+        CompositeFilter<T> composite = (CompositeFilter<T>) filter;
+        int clause = composite.decidingClause(item);
+        witnesses.set(sourceIndex, clause + 1);
+        return composite.isConjunction() ? clause < 0 : clause >= 0;
+    }
+
+    // a result decided by a kept clause stands; a conjunction which passed, or a disjunction
+    // which failed, depends only on the new clause
+    private boolean[] evaluateReplacedClause(final CompositeFilter<T> filter, int clauseIndex) {
+        Filter<T> clause = filter.getClause(clauseIndex);
+        boolean conjunction = filter.isConjunction();
+        boolean[] passed = new boolean[source.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            T item = source.get(i);
+            int witness = witnesses.get(i);
+            if (witness == ClauseWitnesses.UNKNOWN || witness == clauseIndex + 1) {
+                passed[i] = execute(filter, i, item);
+            } else if (witness == 0) {
+                passed[i] = executeFilter(clause, i, item);
+                if (passed[i] != conjunction) {
+                    witnesses.set(i, clauseIndex + 1);
+                }
+            } else {
+                passed[i] = !conjunction;
+            }
+        }
+        return passed;
+    }
+
+    private boolean[] evaluate(final Filter<T> filter) {
+        if (parallelExecutor != null && source.size() >= parallelThreshold) {
+            if (metrics == null) {
+                return ParallelEvaluator.evaluate(source, filter, parallelExecutor);
+            }
+            long start = System.nanoTime();
+            boolean[] passed = ParallelEvaluator.evaluate(source, filter, parallelExecutor);
+            pendingEvaluationNanos += System.nanoTime() - start;
+            pendingEvaluations += passed.length;
+            return passed;
+        }
+
+        boolean[] passed = new boolean[source.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            passed[i] = execute(filter, i, source.get(i));
+        }
+        return passed;
+    }
+
+    private void rebuild() {
+        witnesses = getFilter() instanceof CompositeFilter
+                ? new ClauseWitnesses(source.size()) : null;
+        boolean[] passed = evaluate(getFilter());
+        long start = startTiming();
+        positions.reset(source, passed);
+        addIndexTime(start);
+    }
+
+    // reports the difference between the old and the new membership as ranges
+    private void applyFilterResult(final boolean[] passed) {
+        long start = startTiming();
+        ChangeLog changes = obtainChangeLog();
+        positions.apply(source, passed, changes);
+        addIndexTime(start);
+
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    private void onChanged() {
+        rebuild();
+
+        notifyReset();
+    }
+
+    private void onItemPropertyChanged(int sourceIndex, int propertyId) {
+        T item = source.get(sourceIndex);
+        if (dirtyItems != null) {
+            dirtyItems.put(item, Boolean.TRUE);
+        }
+
+        boolean isTarget = dependency.isDependentOn(propertyId)
+                ? execute(getFilter(), sourceIndex, item)
+                : positions.isMember(sourceIndex);
+
+        ChangeLog changes = obtainChangeLog();
+        updateItem(sourceIndex, item, isTarget, changes);
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    private void updateItem(int sourceIndex, final T item, boolean isTarget,
+                            final ChangeLog changes) {
+        long start = startTiming();
+        positions.update(sourceIndex, item, isTarget, changes);
+        addIndexTime(start);
+    }
+
+    private void onItemRangeChanged(int positionStart, int itemCount) {
+        // the elements may have been replaced
+        if (witnesses != null) {
+            witnesses.forget(positionStart, itemCount);
+        }
+
+        markDirty(positionStart, itemCount);
+
+        // each element is reported at its own position, and ChangeLog joins them into runs
+        ChangeLog changes = obtainChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            updateItem(i, item, execute(getFilter(), i, item), changes);
+        }
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    private void onItemRangeInserted(int positionStart, int itemCount) {
+        long start = startTiming();
+        positions.insert(positionStart, itemCount);
+        if (witnesses != null) {
+            witnesses.insert(positionStart, itemCount);
+        }
+        addIndexTime(start);
+        markDirty(positionStart, itemCount);
+
+        // the inserted elements which pass the filter are logged as a single insertion
+        ChangeLog changes = obtainChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            if (execute(getFilter(), i, item)) {
+                start = startTiming();
+                positions.appear(i, item, changes);
+                addIndexTime(start);
+            }
+        }
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    // an element entering the source may have changed unobserved since the snapshot of the pass
+    private void markDirty(int positionStart, int itemCount) {
+        if (dirtyItems == null) {
+            return;
+        }
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            if (item != null) {
+                dirtyItems.put(item, Boolean.TRUE);
+            }
+        }
+    }
+
+    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        // rotate the mapping in place, keeping the subscriptions and the filter results
+        long start = startTiming();
+        ChangeLog changes = obtainChangeLog();
+        positions.move(fromPosition, toPosition, itemCount, changes);
+        if (witnesses != null) {
+            witnesses.move(fromPosition, toPosition, itemCount);
+        }
+        addIndexTime(start);
+
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    private void onItemRangeRemoved(int positionStart, int itemCount) {
+        long start = startTiming();
+        ChangeLog changes = obtainChangeLog();
+        positions.remove(positionStart, itemCount, changes);
+        if (witnesses != null) {
+            witnesses.remove(positionStart, itemCount);
+        }
+        addIndexTime(start);
+
+        notifyChanges(changes);
+        recycleChangeLog(changes);
+    }
+
+    private ChangeLog obtainChangeLog() {
+        // a nested change from a listener gets its own log
+        if (spareChangeLog == null) {
+            return new ChangeLog();
+        }
+        ChangeLog changes = spareChangeLog;
+        spareChangeLog = null;
+        return changes;
+    }
+
+    private void recycleChangeLog(final ChangeLog changes) {
+        changes.clear();
+        spareChangeLog = changes;
+    }
+
+    private void notifyChanges(final ChangeLog changes) {
+        if (registry == null) {
+            return;
+        }
+        if (batchDepth > 0) {
+            for (int i = 0; i < changes.size(); ++i) {
+                deferChange(changes.typeAt(i), changes.positionStartAt(i), changes.itemCountAt(i),
+                        changes.toPositionAt(i));
+            }
+        } else {
+            dispatchChanges(changes);
+        }
+    }
+
+    private void dispatchChanges(final ChangeLog changes) {
+        if (metrics == null) {
+            changes.dispatch(registry, owner);
+            return;
+        }
+        for (int i = 0; i < changes.size(); ++i) {
+            long start = System.nanoTime();
+            changes.dispatchAt(i, registry, owner);
+            reportNotification(changes.typeAt(i), changes.itemCountAt(i), start);
+        }
+    }
+
+    private void deferChange(int type, int positionStart, int itemCount, int toPosition) {
+        if (pendingReset) {
+            return;
+        }
+        if (type == ChangeLog.MOVED) {
+            pendingChanges.addMove(positionStart, toPosition, itemCount);
+        } else {
+            pendingChanges.add(type, positionStart, itemCount);
+        }
+        if (pendingChanges.size() > MAX_BATCHED_NOTIFICATIONS) {
+            // too fragmented, so fall back to a single onChanged
+            pendingReset = true;
+            pendingChanges.clear();
+        }
+    }
+
+    private void notifyReset() {
+        if (registry == null) {
+            return;
+        }
+        if (batchDepth > 0) {
+            // a reset supersedes every pending change
+            pendingReset = true;
+            pendingChanges.clear();
+        } else {
+            long start = startTiming();
+            registry.notifyChanged(owner);
+            reportNotification(FilterMetrics.RESET, 0, start);
+        }
+    }
+
+    private long startTiming() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private void addIndexTime(long start) {
+        if (metrics != null) {
+            pendingIndexNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void reportNotification(int type, int itemCount, long start) {
+        if (metrics != null) {
+            metrics.onNotified(type, itemCount, System.nanoTime() - start);
+        }
+    }
+
+    // reports the evaluations and the index maintenance measured since the last report
+    private void reportMetrics() {
+        if (metrics == null) {
+            return;
+        }
+        int evaluations = pendingEvaluations;
+        long evaluationNanos = pendingEvaluationNanos;
+        long indexNanos = pendingIndexNanos;
+        pendingEvaluations = 0;
+        pendingEvaluationNanos = 0;
+        pendingIndexNanos = 0;
+
+        if (evaluations > 0) {
+            metrics.onFilterExecuted(evaluations, evaluationNanos);
+        }
+        if (indexNanos > 0) {
+            metrics.onIndexUpdated(indexNanos);
+        }
+    }
+
+    private void reportFilterPass(long start) {
+        reportMetrics();
+        if (metrics != null) {
+            metrics.onFilterPassCompleted(source.size(), System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+
+/**
+ * Real-time filtered read-only view of an {@link ObservableList} which keeps no copy of the
+ * elements.
+ * <p>
+ * Only one membership bit per source element is kept, and {@link #get(int)} resolves the element
+ * in the source through the rank index in O(log n) time. Many views can therefore be stacked
+ * over one large source without a reference array each. The view reads the source directly, so
+ * it reflects a change of the source before it is notified of that change.
+ *
+ * @param <T> the type of elements
+ */
+public class FilteredObservableListView<T> extends AbstractList<T>
+        implements ObservableList<T>, Closeable {
+    private final ObservableList<T> source;
+    private final FilteredPositions<T> positions = new FilteredPositions<>();
+    private final SourceSubscription<T> subscription;
+    private Filter<T> filter;
+    private final FilterDependency dependency = new FilterDependency();
+    private transient ListChangeRegistry registry;
+
+    /**
+     * Creates a new {@code FilteredObservableListView} instance with the specified filter.
+     *
+     * @param source an {@link ObservableList} to be filtered
+     * @param filter a filter which elements must pass
+     */
+    public FilteredObservableListView(final ObservableList<T> source, final Filter<T> filter) {
+        this.source = source;
+        updateFilter(filter);
+
+        // setup
+        rebuild();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                onChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                onItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                onItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                onItemRangeMoved(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                onItemRangeRemoved(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                FilteredObservableListView.this.onItemPropertyChanged(sourceIndex, propertyId);
+            }
+        });
+        subscription.open();
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Adds a callback to be notified when changes to the list occur.
+     *
+     * @param listener a callback to be added
+     */
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry == null) {
+            registry = new ListChangeRegistry();
+        }
+        registry.add(listener);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param listener a callback to be removed
+     */
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry != null) {
+            registry.remove(listener);
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= positions.count()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + positions.count());
+        }
+        return source.get(positions.select(index));
+    }
+
+    @Override
+    public int size() {
+        return positions.count();
+    }
+
+    /**
+     * Sets the specified filter to this {@code FilteredObservableListView}. The difference is
+     * reported as range removals and insertions.
+     *
+     * @param filter a filter to be set
+     */
+    public void setFilter(final Filter<T> filter) {
+        updateFilter(filter);
+
+        ChangeLog changes = new ChangeLog();
+        positions.apply(source, evaluate(), changes);
+        notifyChanges(changes);
+    }
+
+    private void updateFilter(final Filter<T> filter) {
+        this.filter = filter;
+        dependency.update(filter);
+    }
+
+    private boolean[] evaluate() {
+        boolean[] passed = new boolean[source.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            passed[i] = filter.execute(source.get(i));
+        }
+        return passed;
+    }
+
+    private void rebuild() {
+        positions.reset(source, evaluate());
+    }
+
+    private void onChanged() {
+        rebuild();
+
+        if (registry != null) {
+            registry.notifyChanged(this);
+        }
+    }
+
+    private void onItemPropertyChanged(int sourceIndex, int propertyId) {
+        T item = source.get(sourceIndex);
+        boolean isTarget = dependency.isDependentOn(propertyId)
+                ? filter.execute(item)
+                : positions.isMember(sourceIndex);
+
+        ChangeLog changes = new ChangeLog();
+        positions.update(sourceIndex, item, isTarget, changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeChanged(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            positions.update(i, item, filter.execute(item), changes);
+        }
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeInserted(int positionStart, int itemCount) {
+        positions.insert(positionStart, itemCount);
+
+        ChangeLog changes = new ChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            if (filter.execute(item)) {
+                positions.appear(i, item, changes);
+            }
+        }
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        positions.move(fromPosition, toPosition, itemCount, changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeRemoved(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        positions.remove(positionStart, itemCount, changes);
+        notifyChanges(changes);
+    }
+
+    private void notifyChanges(final ChangeLog changes) {
+        if (registry != null) {
+            changes.dispatch(registry, this);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set of real-time filtered views of one source {@link ObservableList}, one per named filter.
+ * <p>
+ * The source and its elements are observed only once, and every change is evaluated against
+ * all filters in a single pass, so adding a view costs one more filter call per changed element
+ * rather than one more subscription per element. An element may be in several buckets.
+ *
+ * @param <T> the type of elements
+ */
+public class FilteredPartition<T> implements Closeable {
+    private final ObservableList<T> source;
+    private final Map<String, Bucket<T>> bucketsByName = new LinkedHashMap<>();
+    private final List<Bucket<T>> buckets = new ArrayList<>();
+    private final SourceSubscription<T> subscription;
+
+    /**
+     * Creates a new {@code FilteredPartition} instance with the specified filters.
+     *
+     * @param source  an {@link ObservableList} to be partitioned
+     * @param filters filters by the names of their buckets
+     */
+    public FilteredPartition(final ObservableList<T> source,
+                             final Map<String, ? extends Filter<T>> filters) {
+        this.source = source;
+        for (final Map.Entry<String, ? extends Filter<T>> entry : filters.entrySet()) {
+            Bucket<T> bucket = new Bucket<>(entry.getValue());
+            bucketsByName.put(entry.getKey(), bucket);
+            buckets.add(bucket);
+        }
+
+        // setup
+        rebuild();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                onChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                onItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                onItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                onItemRangeMoved(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                onItemRangeRemoved(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                FilteredPartition.this.onItemPropertyChanged(sourceIndex, propertyId);
+            }
+        });
+        subscription.open();
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Returns the read-only view of the elements which pass the filter of the specified name.
+     *
+     * @param name the name of a bucket
+     * @return the view of the bucket
+     */
+    public ObservableList<T> getBucket(final String name) {
+        Bucket<T> bucket = bucketsByName.get(name);
+        if (bucket == null) {
+            throw new IllegalArgumentException("No bucket is named " + name + ".");
+        }
+        return bucket;
+    }
+
+    /**
+     * Sets the specified filter to the bucket of the specified name. The difference is reported
+     * to the callbacks of the bucket as range removals and insertions.
+     *
+     * @param name   the name of a bucket
+     * @param filter a filter to be set
+     */
+    public void setFilter(final String name, final Filter<T> filter) {
+        Bucket<T> bucket = (Bucket<T>) getBucket(name);
+        bucket.updateFilter(filter);
+
+        boolean[] passed = new boolean[source.size()];
+        for (int i = 0; i < passed.length; ++i) {
+            passed[i] = filter.execute(source.get(i));
+        }
+        bucket.positions.apply(source, passed, bucket.changes);
+        bucket.notifyChanges();
+    }
+
+    /**
+     * Logs the changes which turn the bucket {@code fromName} into the bucket {@code toName},
+     * comparing their memberships without evaluating any filter.
+     */
+    void diffBuckets(final String fromName, final String toName, final ChangeLog changes) {
+        FilteredPositions<T> from = ((Bucket<T>) getBucket(fromName)).positions;
+        FilteredPositions<T> to = ((Bucket<T>) getBucket(toName)).positions;
+        int position = 0;
+        for (int i = 0; i < from.size(); ++i) {
+            boolean isVisible = from.isMember(i);
+            boolean isTarget = to.isMember(i);
+            if (isVisible && !isTarget) {
+                changes.add(ChangeLog.REMOVED, position, 1);
+            } else if (!isVisible && isTarget) {
+                changes.add(ChangeLog.INSERTED, position, 1);
+                position++;
+            } else if (isVisible) {
+                position++;
+            }
+        }
+    }
+
+    private void rebuild() {
+        boolean[][] passed = new boolean[buckets.size()][source.size()];
+        for (int i = 0; i < source.size(); ++i) {
+            T item = source.get(i);
+            for (int j = 0; j < buckets.size(); ++j) {
+                passed[j][i] = buckets.get(j).filter.execute(item);
+            }
+        }
+        for (int j = 0; j < buckets.size(); ++j) {
+            buckets.get(j).positions.reset(source, passed[j]);
+        }
+    }
+
+    private void onChanged() {
+        rebuild();
+
+        for (final Bucket<T> bucket : buckets) {
+            bucket.notifyReset();
+        }
+    }
+
+    private void onItemPropertyChanged(int sourceIndex, int propertyId) {
+        T item = source.get(sourceIndex);
+        for (final Bucket<T> bucket : buckets) {
+            boolean isTarget = bucket.dependency.isDependentOn(propertyId)
+                    ? bucket.filter.execute(item)
+                    : bucket.positions.isMember(sourceIndex);
+            bucket.positions.update(sourceIndex, item, isTarget, bucket.changes);
+        }
+        notifyChanges();
+    }
+
+    private void onItemRangeChanged(int positionStart, int itemCount) {
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            for (final Bucket<T> bucket : buckets) {
+                bucket.positions.update(i, item, bucket.filter.execute(item), bucket.changes);
+            }
+        }
+        notifyChanges();
+    }
+
+    private void onItemRangeInserted(int positionStart, int itemCount) {
+        for (final Bucket<T> bucket : buckets) {
+            bucket.positions.insert(positionStart, itemCount);
+        }
+
+        // the inserted elements which pass a filter are logged as one insertion to its bucket
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            for (final Bucket<T> bucket : buckets) {
+                if (bucket.filter.execute(item)) {
+                    bucket.positions.appear(i, item, bucket.changes);
+                }
+            }
+        }
+        notifyChanges();
+    }
+
+    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        for (final Bucket<T> bucket : buckets) {
+            bucket.positions.move(fromPosition, toPosition, itemCount, bucket.changes);
+        }
+        notifyChanges();
+    }
+
+    private void onItemRangeRemoved(int positionStart, int itemCount) {
+        for (final Bucket<T> bucket : buckets) {
+            bucket.positions.remove(positionStart, itemCount, bucket.changes);
+        }
+        notifyChanges();
+    }
+
+    private void notifyChanges() {
+        for (final Bucket<T> bucket : buckets) {
+            bucket.notifyChanges();
+        }
+    }
+
+    /**
+     * Read-only view of the elements which pass one filter of a {@link FilteredPartition}.
+     */
+    private static final class Bucket<T> extends ReadOnlyArrayList<T> implements ObservableList<T> {
+        private final FilteredPositions<T> positions = new FilteredPositions<>(asElements());
+        private ChangeLog changes = new ChangeLog();
+        private ChangeLog spareChangeLog = new ChangeLog();
+        private Filter<T> filter;
+        private final FilterDependency dependency = new FilterDependency();
+        private transient ListChangeRegistry registry;
+
+        Bucket(final Filter<T> filter) {
+            super("FilteredPartition bucket");
+            updateFilter(filter);
+        }
+
+        @Override
+        public void addOnListChangedCallback(OnListChangedCallback listener) {
+            if (registry == null) {
+                registry = new ListChangeRegistry();
+            }
+            registry.add(listener);
+        }
+
+        @Override
+        public void removeOnListChangedCallback(OnListChangedCallback listener) {
+            if (registry != null) {
+                registry.remove(listener);
+            }
+        }
+
+        void updateFilter(final Filter<T> filter) {
+            this.filter = filter;
+            dependency.update(filter);
+        }
+
+        void notifyChanges() {
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            // a nested change from a callback is logged aside and dispatched by its own call
+            ChangeLog dispatched = changes;
+            changes = spareChangeLog != null ? spareChangeLog : new ChangeLog();
+            spareChangeLog = null;
+            if (registry != null) {
+                dispatched.dispatch(registry, this);
+            }
+            dispatched.clear();
+            spareChangeLog = dispatched;
+        }
+
+        void notifyReset() {
+            changes.clear();
+            if (registry != null) {
+                registry.notifyChanged(this);
+            }
+        }
+    }
+}
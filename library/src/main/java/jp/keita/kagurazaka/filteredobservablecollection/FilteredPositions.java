@@ -0,0 +1,249 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.List;
+
+/**
+ * Membership of the source elements in a filtered list, which maps the changes of the source to
+ * the positions of the filtered list.
+ * <p>
+ * Each change of the source is applied to the membership kept in a {@link RankIndex} and to the
+ * {@link Elements} of the filtered list if its owner keeps them, and the resulting changes of the
+ * filtered list are logged in a {@link ChangeLog}. The members in a range of the source are
+ * contiguous in the filtered list, so a structural change of the source is logged as at most one
+ * range change.
+ *
+ * @param <T> the type of elements
+ */
+final class FilteredPositions<T> {
+    private final RankIndex ranks = new RankIndex();
+    private final Elements<T> elements; // null if the owner keeps no elements
+
+    FilteredPositions() {
+        this(null);
+    }
+
+    FilteredPositions(final Elements<T> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Returns the number of source elements.
+     */
+    int size() {
+        return ranks.size();
+    }
+
+    /**
+     * Returns the number of members, i.e. the size of the filtered list.
+     */
+    int count() {
+        return ranks.count();
+    }
+
+    boolean isMember(int sourceIndex) {
+        return ranks.isMember(sourceIndex);
+    }
+
+    /**
+     * Returns the filtered index of the element at {@code sourceIndex} if it is a member, or the
+     * filtered index where it would be inserted otherwise.
+     */
+    int rank(int sourceIndex) {
+        return ranks.rank(sourceIndex);
+    }
+
+    /**
+     * Returns the source index of the member at the specified filtered index.
+     */
+    int select(int filteredIndex) {
+        return ranks.select(filteredIndex);
+    }
+
+    /**
+     * Replaces the membership with the verdicts on the whole source without logging the change.
+     */
+    void reset(final List<T> source, final boolean[] passed) {
+        ranks.resize(passed.length);
+        for (int i = 0; i < passed.length; ++i) {
+            if (passed[i]) {
+                ranks.setQuietly(i, true);
+            }
+        }
+        ranks.rebuild();
+        resetElements(source, passed);
+    }
+
+    /**
+     * Replaces the membership with the verdicts on the whole source, and logs the difference as
+     * range removals and insertions.
+     */
+    void apply(final List<T> source, final boolean[] passed, final ChangeLog changes) {
+        // merges the old and the new membership in one pass
+        int position = 0;
+        for (int i = 0; i < passed.length; ++i) {
+            boolean isVisible = ranks.isMember(i);
+            if (isVisible && !passed[i]) {
+                changes.add(ChangeLog.REMOVED, position, 1);
+            } else if (!isVisible && passed[i]) {
+                changes.add(ChangeLog.INSERTED, position, 1);
+                position++;
+            } else if (isVisible) {
+                position++;
+            }
+            ranks.setQuietly(i, passed[i]);
+        }
+        ranks.rebuild();
+        resetElements(source, passed);
+    }
+
+    /**
+     * Removes every slot without logging the change.
+     */
+    void clear() {
+        ranks.clear();
+        if (elements != null) {
+            elements.clear();
+        }
+    }
+
+    /**
+     * Appends a slot for an element which the owner has evaluated after the end of the index,
+     * without logging the change.
+     */
+    void append(final T item, boolean isMember) {
+        int sourceIndex = ranks.size();
+        ranks.insert(sourceIndex, 1);
+        if (isMember) {
+            ranks.set(sourceIndex, true);
+            if (elements != null) {
+                elements.insert(ranks.count() - 1, item);
+            }
+        }
+    }
+
+    /**
+     * Applies the verdict on the element at the specified source index, and logs its appearance,
+     * its disappearance or its change.
+     */
+    void update(int sourceIndex, final T item, boolean isTarget, final ChangeLog changes) {
+        boolean isVisible = ranks.isMember(sourceIndex);
+        if (!isVisible && isTarget) {
+            appear(sourceIndex, item, changes);
+        } else if (isVisible && !isTarget) {
+            disappear(sourceIndex, changes);
+        } else if (isVisible) {
+            int index = ranks.rank(sourceIndex);
+            if (elements != null) {
+                elements.set(index, item);
+            }
+            changes.add(ChangeLog.CHANGED, index, 1);
+        }
+    }
+
+    /**
+     * Makes the element at the specified source index a member, and logs its insertion unless
+     * it is already a member.
+     */
+    void appear(int sourceIndex, final T item, final ChangeLog changes) {
+        if (!ranks.set(sourceIndex, true)) {
+            return;
+        }
+        int index = ranks.rank(sourceIndex);
+        if (elements != null) {
+            elements.insert(index, item);
+        }
+        changes.add(ChangeLog.INSERTED, index, 1);
+    }
+
+    /**
+     * Makes the element at the specified source index a non-member, and logs its removal unless
+     * it is already a non-member.
+     */
+    void disappear(int sourceIndex, final ChangeLog changes) {
+        if (!ranks.set(sourceIndex, false)) {
+            return;
+        }
+        int index = ranks.rank(sourceIndex);
+        if (elements != null) {
+            elements.removeRange(index, index + 1);
+        }
+        changes.add(ChangeLog.REMOVED, index, 1);
+    }
+
+    /**
+     * Inserts non-member slots for the source elements inserted at the specified index. The
+     * members among them are added by {@link #appear(int, Object, ChangeLog)} in order, which
+     * logs them as a single insertion.
+     */
+    void insert(int positionStart, int itemCount) {
+        ranks.insert(positionStart, itemCount);
+    }
+
+    /**
+     * Removes the slots of the source elements removed at the specified index, and logs the
+     * removal of the members among them.
+     */
+    void remove(int positionStart, int itemCount, final ChangeLog changes) {
+        int index = ranks.rank(positionStart);
+        int removedCount = ranks.rank(positionStart + itemCount) - index;
+        if (elements != null) {
+            elements.removeRange(index, index + removedCount);
+        }
+        ranks.remove(positionStart, itemCount);
+        changes.add(ChangeLog.REMOVED, index, removedCount);
+    }
+
+    /**
+     * Moves the slots of the source elements moved from {@code fromPosition} to
+     * {@code toPosition}, where {@code toPosition} is an index before the move, and logs the
+     * move of the members among them if their filtered positions change.
+     */
+    void move(int fromPosition, int toPosition, int itemCount, final ChangeLog changes) {
+        int fromIndex = ranks.rank(fromPosition);
+        int movedCount = ranks.rank(fromPosition + itemCount) - fromIndex;
+        int toIndex = ranks.rank(toPosition);
+        ranks.move(fromPosition, toPosition, itemCount);
+
+        if (movedCount > 0 && (toIndex < fromIndex || fromIndex + movedCount < toIndex)) {
+            if (elements != null) {
+                elements.move(fromIndex, toIndex, movedCount);
+            }
+            changes.addMove(fromIndex, toIndex, movedCount);
+        }
+    }
+
+    private void resetElements(final List<T> source, final boolean[] passed) {
+        if (elements == null) {
+            return;
+        }
+        elements.clear();
+        int index = 0;
+        for (int i = 0; i < passed.length; ++i) {
+            if (passed[i]) {
+                elements.insert(index++, source.get(i));
+            }
+        }
+    }
+
+    /**
+     * Elements of a filtered list, which {@link FilteredPositions} keeps in the order of the
+     * members.
+     *
+     * @param <T> the type of elements
+     */
+    interface Elements<T> {
+        void insert(int index, T item);
+
+        void set(int index, T item);
+
+        void removeRange(int fromIndex, int toIndex);
+
+        /**
+         * Moves {@code itemCount} elements from {@code fromIndex} to {@code toIndex}, where
+         * {@code toIndex} is an index before the move.
+         */
+        void move(int fromIndex, int toIndex, int itemCount);
+
+        void clear();
+    }
+}
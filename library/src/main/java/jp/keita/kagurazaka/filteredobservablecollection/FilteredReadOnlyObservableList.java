@@ -1,29 +1,19 @@
 package jp.keita.kagurazaka.filteredobservablecollection;
 
-import android.databinding.ListChangeRegistry;
 import android.databinding.Observable;
 import android.databinding.ObservableList;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Real-time filtered {@link ObservableList}.
  *
  * @param <T> the type of elements
  */
-public class FilteredReadOnlyObservableList<T> extends ArrayList<T>
+public class FilteredReadOnlyObservableList<T> extends ReadOnlyArrayList<T>
         implements ObservableList<T>, Closeable {
-    private final ObservableList<T> source;
-    private final List<IndexWithRemover> indexList = new ArrayList<>();
-    private final Observable.OnPropertyChangedCallback itemChangedCallback;
-    private final OnListChangedCallback<ObservableList<T>> listChangedCallback;
-    private Filter<T> filter;
-    private transient ListChangeRegistry registry;
+    private final FilteredListCore<T> core;
 
     /**
      * Creates a new {@code FilteredReadOnlyObservableList} instance with a filter by which all
@@ -46,92 +36,47 @@ public class FilteredReadOnlyObservableList<T> extends ArrayList<T>
      * @param source an {@link ObservableList} to be filtered
      */
     public FilteredReadOnlyObservableList(final ObservableList<T> source, final Filter<T> filter) {
-        this.source = source;
-        this.filter = filter;
-
-        // observe item property change events when the item is Observable
-        itemChangedCallback = new Observable.OnPropertyChangedCallback() {
-            @SuppressWarnings("unchecked")
-            @Override
-            public void onPropertyChanged(Observable observable, int i) {
-                T item = (T) observable;
-                int sourceIndex = source.indexOf(item);
-                Integer filteredIndex = indexList.get(sourceIndex).index;
-                boolean isTarget = getFilter().execute(item);
-
-                if (filteredIndex == null && isTarget) {
-                    onItemAppeared(sourceIndex);
-                } else if (filteredIndex != null && !isTarget) {
-                    onItemDisappeared(sourceIndex);
-                } else if (filteredIndex != null) {
-                    onItemUpdated(sourceIndex);
-                }
-            }
-        };
-
-        // setup
-        int itemCount = 0;
-        for (final T item : source) {
-            IndexWithRemover iwr = new IndexWithRemover(null);
-            if (getFilter().execute(item)) {
-                iwr.index = itemCount;
-                itemCount++;
-                super.add(item);
-            }
-
-            if (item instanceof Observable) {
-                final Observable observable = (Observable) item;
-                observable.addOnPropertyChangedCallback(itemChangedCallback);
-                iwr.remover = new Remover() {
-                    @Override
-                    public void remove() {
-                        observable.removeOnPropertyChangedCallback(itemChangedCallback);
-                    }
-                };
-            }
-
-            indexList.add(iwr);
-        }
-
-        // observe the source list change events
-        listChangedCallback = new OnListChangedCallback<ObservableList<T>>() {
-            @Override
-            public void onChanged(ObservableList<T> sender) {
-                setFilter(getFilter());
-            }
-
-            @Override
-            public void onItemRangeChanged(ObservableList<T> sender, int positionStart, int itemCount) {
-                FilteredReadOnlyObservableList.this.onItemRangeChanged(positionStart, itemCount);
-            }
-
-            @Override
-            public void onItemRangeInserted(ObservableList<T> sender, int positionStart, int itemCount) {
-                FilteredReadOnlyObservableList.this.onItemRangeInserted(positionStart, itemCount);
-            }
-
-            @Override
-            public void onItemRangeMoved(ObservableList<T> sender, int fromPosition, int toPosition, int itemCount) {
-                FilteredReadOnlyObservableList.this.onItemRangeMoved(fromPosition, toPosition, itemCount);
-            }
+        this(source, filter, null, 0);
+    }
 
-            @Override
-            public void onItemRangeRemoved(ObservableList<T> sender, int positionStart, int itemCount) {
-                FilteredReadOnlyObservableList.this.onItemRangeRemoved(positionStart, itemCount);
-            }
-        };
-        source.addOnListChangedCallback(listChangedCallback);
+    /**
+     * Creates a new {@code FilteredReadOnlyObservableList} instance with the specified filter,
+     * which evaluates the whole source in parallel on construction, on {@link #setFilter(Filter)}
+     * and on a reset of the source.
+     * <p>
+     * The source is split into chunks which are evaluated on {@code parallelExecutor}, e.g. a
+     * {@code ForkJoinPool}, and on the calling thread, which returns once every chunk is done.
+     * The calling thread takes over the chunks no task has started, so a saturated or rejecting
+     * executor only slows the evaluation down. Sources smaller than {@code parallelThreshold}
+     * are evaluated sequentially. The filter must be thread-safe.
+     *
+     * @param source            an {@link ObservableList} to be filtered
+     * @param filter            a filter which elements must pass
+     * @param parallelExecutor  an executor which evaluates the chunks, or null to evaluate
+     *                          sequentially
+     * @param parallelThreshold the minimum size of the source to be evaluated in parallel
+     */
+    public FilteredReadOnlyObservableList(final ObservableList<T> source, final Filter<T> filter,
+                                          final Executor parallelExecutor,
+                                          int parallelThreshold) {
+        super("FilteredReadOnlyObservableList");
+        core = new FilteredListCore<>(this, asElements(), source, filter, parallelExecutor,
+                parallelThreshold);
     }
 
     @Override
     public void close() {
-        for (final IndexWithRemover iwr : indexList) {
-            if (iwr.remover != null) {
-                iwr.remover.remove();
-                iwr.remover = null;
-            }
-        }
-        source.removeOnListChangedCallback(listChangedCallback);
+        core.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        core.setWeakSubscriptionEnabled(enabled);
     }
 
     /**
@@ -141,10 +86,7 @@ public class FilteredReadOnlyObservableList<T> extends ArrayList<T>
      */
     @Override
     public void addOnListChangedCallback(OnListChangedCallback listener) {
-        if (registry == null) {
-            registry = new ListChangeRegistry();
-        }
-        registry.add(listener);
+        core.addOnListChangedCallback(listener);
     }
 
     /**
@@ -154,384 +96,137 @@ public class FilteredReadOnlyObservableList<T> extends ArrayList<T>
      */
     @Override
     public void removeOnListChangedCallback(OnListChangedCallback listener) {
-        if (registry != null) {
-            registry.remove(listener);
-        }
-    }
-
-    @Override
-    public boolean add(T object) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
+        core.removeOnListChangedCallback(listener);
     }
 
-    @Override
-    public void add(int index, T object) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public boolean addAll(@NonNull Collection<? extends T> collection) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public boolean addAll(int index, @NonNull Collection<? extends T> collection) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public void clear() {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public T remove(int index) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public boolean remove(Object object) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public boolean removeAll(@NonNull Collection<?> collection) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public boolean retainAll(@NonNull Collection<?> collection) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
-    }
-
-    @Override
-    public T set(int index, T object) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
+    /**
+     * Starts a batch, during which change notifications are deferred.
+     * <p>
+     * The notifications are merged into a minimal set of range notifications and dispatched
+     * when the outermost batch ends. If the merged changes are still too fragmented, a single
+     * {@code onChanged} is dispatched instead. Batches can be nested.
+     *
+     * @return a handle which ends the batch when closed
+     */
+    public Batch beginBatch() {
+        return core.beginBatch();
     }
 
-    @Override
-    protected void removeRange(int fromIndex, int toIndex) {
-        throw new UnsupportedOperationException("FilteredReadOnlyObservableList is immutable.");
+    /**
+     * Ends a batch started by {@link #beginBatch()}, and dispatches the deferred notifications
+     * if it is the outermost one.
+     */
+    public void endBatch() {
+        core.endBatch();
     }
 
     /**
      * Sets the specified filter to this {@code FilteredReadOnlyObservableList}.
+     * <p>
+     * The difference between the old and the new contents is reported as range removals and
+     * insertions, so that only the elements which actually appear or disappear are rebound.
+     * If the filter is the current {@link CompositeFilter} with one clause replaced, only the
+     * elements whose result may change are evaluated again.
      *
      * @param filter a filter to be set
      */
     public void setFilter(final Filter<T> filter) {
-        this.filter = filter;
-        super.clear();
-
-        int itemCount = 0;
-        for (int i = 0; i < indexList.size(); ++i) {
-            if (getFilter().execute(source.get(i))) {
-                indexList.get(i).index = itemCount;
-                itemCount++;
-                super.add(source.get(i));
-            } else {
-                indexList.get(i).index = null;
-            }
-        }
-
-        if (registry != null) {
-            registry.notifyChanged(this);
-        }
+        core.setFilter(filter);
     }
 
-    private Filter<T> getFilter() {
-        return filter;
-    }
-
-    private int findNonNullNearIndex(int position) {
-        for (int i = position - 1; i >= 0; --i) {
-            if (indexList.get(i).index != null) {
-                return indexList.get(i).index;
-            }
-        }
-        return -1;
-    }
-
-    private int appearItem(int sourceIndex) {
-        int nearIndex = findNonNullNearIndex(sourceIndex);
-        int index = nearIndex + 1;
-        indexList.get(sourceIndex).index = index;
-        super.add(index, source.get(sourceIndex));
-
-        for (int i = sourceIndex + 1; i < indexList.size(); ++i) {
-            if (indexList.get(i).index != null) {
-                indexList.get(i).index++;
-            }
-        }
-
-        return index;
-    }
-
-    private int disappearItem(int sourceIndex) {
-        if (indexList.get(sourceIndex).index == null) {
-            return -1; // already disappeared
-        }
-
-        int index = indexList.get(sourceIndex).index;
-        super.remove(index);
-        indexList.get(sourceIndex).index = null;
-
-        for (int i = sourceIndex; i < indexList.size(); ++i) {
-            if (indexList.get(i).index != null) {
-                indexList.get(i).index--;
-            }
-        }
-
-        return index;
-    }
-
-    private void onItemAppeared(int sourceIndex) {
-        int index = appearItem(sourceIndex);
-        if (registry != null && index >= 0) {
-            registry.notifyInserted(this, index, 1);
-        }
-    }
-
-    private void onItemDisappeared(int sourceIndex) {
-        int index = disappearItem(sourceIndex);
-        if (registry != null && index >= 0) {
-            registry.notifyRemoved(this, index, 1);
-        }
-    }
-
-    private void onItemUpdated(int sourceIndex) {
-        int index = indexList.get(sourceIndex).index;
-        super.set(index, source.get(sourceIndex));
-        if (registry != null) {
-            registry.notifyChanged(this, index, 1);
-        }
-    }
-
-    private void onItemRangeAppeared(final List<Change> changes) {
-        List<Integer> notifyIndices = new ArrayList<>();
-        for (final Change change : changes) {
-            if (change.type == Change.Type.SKIP) {
-                continue;
-            }
-            int index = appearItem(change.sourceIndex);
-            if (index >= 0) {
-                notifyIndices.add(index);
-            }
-        }
-
-        int notifyCount = notifyIndices.size();
-        if (registry != null && notifyCount > 0) {
-            registry.notifyInserted(this, notifyIndices.get(0), notifyCount);
-        }
-    }
-
-    private void onItemRangeDisappeared(final List<Change> changes) {
-        List<Integer> notifyIndices = new ArrayList<>();
-        for (final Change change : changes) {
-            if (change.type == Change.Type.SKIP) {
-                continue;
-            }
-            int index = disappearItem(change.sourceIndex);
-            if (index >= 0) {
-                notifyIndices.add(index);
-            }
-        }
-
-        int notifyCount = notifyIndices.size();
-        if (registry != null && notifyCount > 0) {
-            registry.notifyRemoved(this, notifyIndices.get(notifyCount - 1), notifyCount);
-        }
-    }
-
-    private void onItemRangeUpdated(final List<Change> changes) {
-        List<Integer> notifyIndices = new ArrayList<>();
-        for (final Change change : changes) {
-            if (change.type == Change.Type.SKIP) {
-                continue;
-            }
-            int index = indexList.get(change.sourceIndex).index; // always not null
-            super.set(index, source.get(change.sourceIndex));
-            notifyIndices.add(index);
-        }
-
-        int notifyCount = notifyIndices.size();
-        if (registry != null && notifyCount > 0) {
-            registry.notifyChanged(this, notifyIndices.get(0), notifyCount);
-        }
-    }
-
-    private void onItemRangeChanged(int positionStart, int itemCount) {
-        List<List<Change>> changesList = new ArrayList<>();
-        Change.Type beforeChangeType = Change.Type.NONE;
-
-        for (int i = positionStart; i < positionStart + itemCount; ++i) {
-            Integer index = indexList.get(i).index;
-            boolean isTarget = getFilter().execute(source.get(i));
-
-            Change.Type currentChangeType;
-            if (index == null && isTarget) {
-                currentChangeType = Change.Type.INSERT;
-            } else if (index != null && !isTarget) {
-                currentChangeType = Change.Type.REMOVE;
-            } else if (index != null) {
-                currentChangeType = Change.Type.UPDATE;
-            } else {
-                currentChangeType = Change.Type.SKIP;
-            }
-
-            if (currentChangeType != Change.Type.SKIP && currentChangeType != beforeChangeType) {
-                changesList.add(new ArrayList<Change>());
-                beforeChangeType = currentChangeType;
-            }
-
-            if (changesList.size() > 0) {
-                changesList.get(changesList.size() - 1).add(new Change(i, currentChangeType));
-            }
-        }
-
-        for (final List<Change> changes : changesList) {
-            if (changes == null || changes.size() == 0) {
-                continue;
-            }
-
-            // check the type of the changes
-            Change.Type type = Change.Type.SKIP;
-            for (final Change change : changes) {
-                if (change.type != Change.Type.SKIP) {
-                    type = change.type;
-                    break;
-                }
-            }
-            if (type == Change.Type.SKIP) {
-                continue;
-            }
-
-            switch (type) {
-                case INSERT:
-                    onItemRangeAppeared(changes);
-                    break;
-                case REMOVE:
-                    onItemRangeDisappeared(changes);
-                    break;
-                case UPDATE:
-                    onItemRangeUpdated(changes);
-                    break;
-                default:
-                    throw new IllegalStateException("never reached");
-            }
-        }
+    /**
+     * Sets the specified filter, which passes only elements that the current filter also passes.
+     * <p>
+     * Only the elements in this list are re-evaluated, and the elements which do not pass the
+     * new filter are reported as removals. This suits narrowing a filter step by step, e.g.
+     * search-as-you-type.
+     *
+     * @param filter a filter to be set, which must be a refinement of the current filter
+     */
+    public void refineFilter(final Filter<T> filter) {
+        core.refineFilter(filter);
     }
 
-    private void onItemRangeInserted(int positionStart, int itemCount) {
-        List<Integer> notifyIndices = new ArrayList<>();
-        for (int i = positionStart; i < positionStart + itemCount; ++i) {
-            IndexWithRemover iwr = new IndexWithRemover(null);
-
-            // register callback for receiving onPropertyChanged events of inserted elements
-            T item = source.get(i);
-            if (item instanceof Observable) {
-                final Observable observable = (Observable) item;
-                observable.addOnPropertyChangedCallback(itemChangedCallback);
-                iwr.remover = new Remover() {
-                    @Override
-                    public void remove() {
-                        observable.removeOnPropertyChangedCallback(itemChangedCallback);
-                    }
-                };
-            }
-
-            indexList.add(i, iwr);
-
-            if (getFilter().execute(item)) {
-                int index = appearItem(i);
-                if (index >= 0) {
-                    notifyIndices.add(index);
-                }
-            }
-        }
-
-        int notifyCount = notifyIndices.size();
-        if (registry != null && notifyCount > 0) {
-            registry.notifyInserted(this, notifyIndices.get(0), notifyCount);
-        }
+    /**
+     * Sets the specified filter, which passes every element that the current filter passes.
+     * <p>
+     * Only the elements not in this list are re-evaluated, and the elements which pass the new
+     * filter are reported as insertions.
+     *
+     * @param filter a filter to be set, which must be a relaxation of the current filter
+     */
+    public void relaxFilter(final Filter<T> filter) {
+        core.relaxFilter(filter);
     }
 
-    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
-        // not move
-        if (fromPosition <= toPosition && toPosition <= fromPosition + itemCount) {
-            return;
-        }
-
-        // remove -> insert
-        onItemRangeRemoved(fromPosition, itemCount);
-
-        int actualToPosition;
-        if (toPosition < fromPosition) {
-            actualToPosition = toPosition;
-        } else if (fromPosition + itemCount < toPosition) {
-            actualToPosition = toPosition - itemCount;
-        } else {
-            throw new IllegalStateException("never reached");
-        }
-
-        onItemRangeInserted(actualToPosition, itemCount);
+    /**
+     * Sets the specified filter, evaluating it on a background thread.
+     * <p>
+     * The filter is evaluated against a snapshot of the source on {@code backgroundExecutor},
+     * and the result is applied and notified on {@code mainExecutor}, which must run on the
+     * thread that modifies the source. Until then the current filter stays in effect. Elements
+     * which are inserted or set, or whose properties change, while the pass is running are
+     * evaluated again when the result is applied. A pending pass is cancelled by a newer call of this
+     * method or any other filter setter, and by {@link #close()}.
+     *
+     * @param filter             a filter to be set
+     * @param backgroundExecutor an executor which evaluates the filter
+     * @param mainExecutor       an executor which applies the result on the main thread
+     */
+    public void setFilterAsync(final Filter<T> filter, final Executor backgroundExecutor,
+                               final Executor mainExecutor) {
+        core.setFilterAsync(filter, backgroundExecutor, mainExecutor);
     }
 
-    private void onItemRangeRemoved(int positionStart, int itemCount) {
-        List<Integer> notifyIndices = new ArrayList<>();
-        for (int i = positionStart + itemCount - 1; i >= positionStart; --i) {
-            IndexWithRemover iwr = indexList.get(i);
-            if (iwr.remover != null) {
-                iwr.remover.remove();
-                iwr.remover = null;
-            }
-
-            int index = disappearItem(i);
-            if (index >= 0) {
-                notifyIndices.add(index);
-            }
-            indexList.remove(i);
-        }
-
-        int notifyCount = notifyIndices.size();
-        if (registry != null && notifyCount > 0) {
-            registry.notifyRemoved(this, notifyIndices.get(notifyCount - 1), notifyCount);
-        }
+    /**
+     * Enables or disables the memo of filter verdicts, which is disabled by default.
+     * <p>
+     * While enabled, the verdict of each {@link Observable} element is memoized for the current
+     * filter, and reused until a property of the element changes or a different filter is set.
+     * Range changes, resets of the source and {@code setFilter} with the current filter then
+     * evaluate only the elements which may have changed. The filter must depend only on the
+     * observable state of the elements. Other elements are always evaluated.
+     *
+     * @param enabled true to memoize verdicts
+     */
+    public void setFilterMemoEnabled(boolean enabled) {
+        core.setFilterMemoEnabled(enabled);
     }
 
-    private interface Remover {
-        void remove();
+    /**
+     * Installs the specified metrics, which receive measurements of the filter evaluations, the
+     * index maintenance, the notifications and the filter passes of this list. Nothing is
+     * measured while no metrics are installed.
+     *
+     * @param metrics metrics to be installed, or null to uninstall them
+     */
+    public void setMetrics(final FilterMetrics metrics) {
+        core.setMetrics(metrics);
     }
 
-    private static class IndexWithRemover {
-        Integer index;
-        Remover remover;
-
-        IndexWithRemover(@Nullable final Integer index) {
-            this(index, null);
-        }
-
-        IndexWithRemover(@Nullable final Integer index, @Nullable final Remover remover) {
-            this.index = index;
-            this.remover = remover;
-        }
+    /**
+     * Enables or disables the lazy subscription, which is disabled by default.
+     * <p>
+     * While enabled, the source and its elements are observed only while at least one callback
+     * is added to this list, so an unobserved list costs no work per change and holds no
+     * callbacks on the elements. The contents of an unobserved list are left as they were, and a
+     * filter set meanwhile is only kept. Both are brought up to date without notifications when
+     * a callback is added again.
+     *
+     * @param enabled true to observe the source only while this list is observed
+     */
+    public void setLazySubscriptionEnabled(boolean enabled) {
+        core.setLazySubscriptionEnabled(enabled);
     }
 
-    private static class Change {
-        int sourceIndex;
-        Type type;
-
-        Change(int sourceIndex, Type type) {
-            this.sourceIndex = sourceIndex;
-            this.type = type;
-        }
-
-        enum Type {
-            NONE,
-            SKIP,
-            INSERT,
-            REMOVE,
-            UPDATE
-        }
+    /**
+     * Handle of a batch started by {@link #beginBatch()}.
+     */
+    public interface Batch extends Closeable {
+        /**
+         * Ends the batch. Closing the same handle twice has no effect.
+         */
+        @Override
+        void close();
     }
 }
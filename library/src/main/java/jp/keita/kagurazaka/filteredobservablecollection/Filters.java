@@ -0,0 +1,153 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Factory methods to compose {@link Filter}s.
+ * <p>
+ * A clause can be given its relative cost and the ratio of elements it passes by
+ * {@link #weighted(Filter, float, float)}, so that {@link #and(Filter[])} and
+ * {@link #or(Filter[])} evaluate the clauses in the order which decides the result fastest.
+ * Clauses without them are assumed to have a cost of 1 and a pass rate of 0.5.
+ */
+public final class Filters {
+    static final float DEFAULT_COST = 1f;
+    static final float DEFAULT_PASS_RATE = 0.5f;
+
+    private Filters() {
+    }
+
+    /**
+     * Returns a filter which passes elements that pass all of the specified clauses.
+     *
+     * @param clauses filters to be combined
+     * @param <T>     the type of collection elements to be filtered
+     * @return the conjunction of the clauses
+     */
+    @SafeVarargs
+    public static <T> CompositeFilter<T> and(final Filter<T>... clauses) {
+        // copied element by element, since the array must not escape this method
+        List<Filter<T>> copy = new ArrayList<>(clauses.length);
+        for (final Filter<T> clause : clauses) {
+            copy.add(clause);
+        }
+        return new CompositeFilter<>(true, copy);
+    }
+
+    /**
+     * Returns a filter which passes elements that pass any of the specified clauses.
+     *
+     * @param clauses filters to be combined
+     * @param <T>     the type of collection elements to be filtered
+     * @return the disjunction of the clauses
+     */
+    @SafeVarargs
+    public static <T> CompositeFilter<T> or(final Filter<T>... clauses) {
+        // copied element by element, since the array must not escape this method
+        List<Filter<T>> copy = new ArrayList<>(clauses.length);
+        for (final Filter<T> clause : clauses) {
+            copy.add(clause);
+        }
+        return new CompositeFilter<>(false, copy);
+    }
+
+    /**
+     * Returns a filter which passes elements that the specified filter does not pass.
+     *
+     * @param filter a filter to be negated
+     * @param <T>    the type of collection elements to be filtered
+     * @return the negation of the filter
+     */
+    public static <T> Filter<T> not(final Filter<T> filter) {
+        return new Not<>(filter);
+    }
+
+    /**
+     * Returns a filter which behaves as the specified filter, with the specified relative cost
+     * and pass rate as hints for ordering clauses.
+     *
+     * @param filter   a filter to be wrapped
+     * @param cost     the relative cost of evaluating the filter, which must not be negative
+     * @param passRate the expected ratio of elements which pass the filter, from 0 to 1
+     * @param <T>      the type of collection elements to be filtered
+     * @return the filter with the hints
+     */
+    public static <T> Filter<T> weighted(final Filter<T> filter, float cost, float passRate) {
+        if (cost < 0) {
+            throw new IllegalArgumentException("cost must not be negative.");
+        }
+        if (passRate < 0 || passRate > 1) {
+            throw new IllegalArgumentException("passRate must be between 0 and 1.");
+        }
+        return new Weighted<>(filter, cost, passRate);
+    }
+
+    static float costOf(final Filter<?> filter) {
+        if (filter instanceof Weighted) {
+            return ((Weighted<?>) filter).cost;
+        } else if (filter instanceof CompositeFilter) {
+            return ((CompositeFilter<?>) filter).getCost();
+        } else if (filter instanceof Not) {
+            return costOf(((Not<?>) filter).filter);
+        }
+        return DEFAULT_COST;
+    }
+
+    static float passRateOf(final Filter<?> filter) {
+        if (filter instanceof Weighted) {
+            return ((Weighted<?>) filter).passRate;
+        } else if (filter instanceof CompositeFilter) {
+            return ((CompositeFilter<?>) filter).getPassRate();
+        } else if (filter instanceof Not) {
+            return 1 - passRateOf(((Not<?>) filter).filter);
+        }
+        return DEFAULT_PASS_RATE;
+    }
+
+    static int[] dependentPropertyIdsOf(final Filter<?> filter) {
+        return filter instanceof PropertyAwareFilter
+                ? ((PropertyAwareFilter<?>) filter).getDependentPropertyIds()
+                : null;
+    }
+
+    private static final class Not<T> implements PropertyAwareFilter<T> {
+        private final Filter<T> filter;
+
+        Not(final Filter<T> filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean execute(T element) {
+            return !filter.execute(element);
+        }
+
+        @Override
+        public int[] getDependentPropertyIds() {
+            return dependentPropertyIdsOf(filter);
+        }
+    }
+
+    private static final class Weighted<T> implements PropertyAwareFilter<T> {
+        private final Filter<T> filter;
+        private final float cost;
+        private final float passRate;
+
+        Weighted(final Filter<T> filter, float cost, float passRate) {
+            this.filter = filter;
+            this.cost = cost;
+            this.passRate = passRate;
+        }
+
+        @Override
+        public boolean execute(T element) {
+            return filter.execute(element);
+        }
+
+        @Override
+        public int[] getDependentPropertyIds() {
+            return dependentPropertyIdsOf(filter);
+        }
+    }
+}
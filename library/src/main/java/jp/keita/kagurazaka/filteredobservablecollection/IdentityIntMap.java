@@ -0,0 +1,104 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from object identity to a non-negative {@code int}.
+ * <p>
+ * Unlike {@code IdentityHashMap<Object, Integer>}, neither lookups nor updates of existing keys
+ * allocate.
+ */
+final class IdentityIntMap {
+    static final int MISSING = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    IdentityIntMap() {
+        keys = new Object[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value mapped to the specified key, or {@link #MISSING} if there is none.
+     */
+    int get(final Object key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return MISSING;
+    }
+
+    void put(final Object key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    void remove(final Object key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; keys[i] != key; i = (i + 1) & mask) {
+            if (keys[i] == null) {
+                return;
+            }
+        }
+        keys[i] = null;
+        size--;
+
+        // shift back the following entries of the probe sequence
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(final Object key) {
+        int h = System.identityHashCode(key);
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,438 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.Observable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Identity-keyed index from {@link Observable} source elements to their source positions.
+ * <p>
+ * Keeps the property change callback registered on every {@link Observable} element exactly once,
+ * even if the same instance appears several times in the source. Each occurrence of an element
+ * is a slot which knows its block and its offset in the block, and a Fenwick tree over the block
+ * sizes turns them into a source position in O(log n) time. A structural change updates the
+ * offsets in the blocks it touches only, as {@link RankIndex} does, instead of invalidating the
+ * positions of the whole tail. The occurrences of an instance are chained, so the positions of a
+ * duplicate are resolved without scanning the source.
+ * <p>
+ * An index which keeps the elements holds a slot for every element, {@link Observable} or not,
+ * so that the elements removed or replaced by a change are still known while it is forwarded.
+ */
+final class ItemIndex {
+    static final int BLOCK_SIZE = 256;
+    private static final int VERSION_MASK = 0x3fffffff;
+
+    private Observable.OnPropertyChangedCallback callback;
+    private final boolean keepsElements;
+    private final IdentityHashMap<Observable, Slot> slotsByItem = new IdentityHashMap<>();
+    private final IdentityIntMap verdicts = new IdentityIntMap(); // version << 1 | verdict
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    private int[] tree = new int[1]; // 1-based, over the block sizes
+    private int size;
+    private int offset; // the offset in the block found by the last locate()
+
+    ItemIndex(final Observable.OnPropertyChangedCallback callback) {
+        this(callback, false);
+    }
+
+    ItemIndex(final Observable.OnPropertyChangedCallback callback, boolean keepsElements) {
+        this.callback = callback;
+        this.keepsElements = keepsElements;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Replaces the callback to be registered on the elements, which is allowed only while no
+     * slot exists.
+     */
+    void setCallback(final Observable.OnPropertyChangedCallback callback) {
+        if (size > 0) {
+            throw new IllegalStateException("Slots are subscribed with the current callback.");
+        }
+        this.callback = callback;
+    }
+
+    /**
+     * Inserts slots for the source elements in {@code [position, position + itemCount)}.
+     */
+    void insert(int position, final List<?> source, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        Slot[] inserted = new Slot[itemCount];
+        for (int i = 0; i < itemCount; ++i) {
+            Object item = source.get(position + i);
+            if (item instanceof Observable || keepsElements) {
+                inserted[i] = new Slot(item);
+                subscribe(inserted[i]);
+            }
+        }
+        insertSlots(position, inserted);
+    }
+
+    /**
+     * Replaces the slots in {@code [position, position + itemCount)} with the current source
+     * elements, and returns the replaced elements if this index keeps the elements.
+     */
+    Object[] replace(int position, final List<?> source, int itemCount) {
+        Object[] previous = keepsElements ? new Object[itemCount] : null;
+        for (int i = position; i < position + itemCount; ++i) {
+            Object item = source.get(i);
+            Object kept = item instanceof Observable || keepsElements ? item : null;
+            Block block = blocks.get(locate(i));
+            Slot old = block.slots[offset];
+            Object oldItem = old == null ? null : old.item;
+            if (previous != null) {
+                previous[i - position] = oldItem;
+            }
+            if (oldItem == kept) {
+                continue;
+            }
+            if (old != null) {
+                unsubscribe(old);
+            }
+            Slot slot = null;
+            if (kept != null) {
+                slot = new Slot(kept);
+                subscribe(slot);
+            }
+            block.put(offset, slot);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the slots in {@code [position, position + itemCount)}, and returns the removed
+     * elements if this index keeps the elements.
+     */
+    Object[] remove(int position, int itemCount) {
+        Slot[] removed = removeSlots(position, itemCount);
+        Object[] previous = keepsElements ? new Object[itemCount] : null;
+        for (int i = 0; i < removed.length; ++i) {
+            if (removed[i] != null) {
+                unsubscribe(removed[i]);
+                if (previous != null) {
+                    previous[i] = removed[i].item;
+                }
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Moves {@code itemCount} slots from {@code position} to {@code toPosition}, where
+     * {@code toPosition} is an index before the move. Subscriptions are kept as they are.
+     */
+    void move(int position, int toPosition, int itemCount) {
+        if (position <= toPosition && toPosition <= position + itemCount) {
+            return;
+        }
+        Slot[] moved = removeSlots(position, itemCount);
+        insertSlots(toPosition < position ? toPosition : toPosition - itemCount, moved);
+    }
+
+    /**
+     * Removes all slots and unregisters the callback from every element.
+     */
+    void clear() {
+        for (final Observable observable : slotsByItem.keySet()) {
+            observable.removeOnPropertyChangedCallback(callback);
+        }
+        slotsByItem.clear();
+        verdicts.clear();
+        blocks.clear();
+        rebuildTree();
+        size = 0;
+    }
+
+    /**
+     * Returns the first source position of the specified element, or -1 if it is not indexed.
+     */
+    int indexOf(final Observable observable) {
+        return nextIndexOf(observable, -1);
+    }
+
+    /**
+     * Returns the next source position of the specified element after {@code position}, or -1
+     * if the element does not appear again.
+     */
+    int nextIndexOf(final Observable observable, int position) {
+        int next = -1;
+        for (Slot slot = slotsByItem.get(observable); slot != null; slot = slot.nextSame) {
+            int candidate = positionOf(slot);
+            if (candidate > position && (next < 0 || candidate < next)) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns the memoized filter verdict of the specified element for the filter version, i.e.
+     * 1 if it passed, 0 if it did not, or -1 if there is no verdict for that version.
+     */
+    int getVerdict(final Observable observable, int version) {
+        int entry = verdicts.get(observable);
+        if (entry == IdentityIntMap.MISSING || entry >>> 1 != (version & VERSION_MASK)) {
+            return -1;
+        }
+        return entry & 1;
+    }
+
+    /**
+     * Memoizes the filter verdict of the specified element, if it is indexed. The verdict is
+     * dropped when the element leaves the index.
+     */
+    void putVerdict(final Observable observable, int version, boolean passed) {
+        if (slotsByItem.containsKey(observable)) {
+            verdicts.put(observable, (version & VERSION_MASK) << 1 | (passed ? 1 : 0));
+        }
+    }
+
+    void forgetVerdict(final Observable observable) {
+        verdicts.remove(observable);
+    }
+
+    void clearVerdicts() {
+        verdicts.clear();
+    }
+
+    private void subscribe(final Slot slot) {
+        if (!(slot.item instanceof Observable)) {
+            return; // kept only to be returned when it leaves
+        }
+        Observable observable = (Observable) slot.item;
+        Slot first = slotsByItem.get(observable);
+        if (first == null) {
+            slotsByItem.put(observable, slot);
+            observable.addOnPropertyChangedCallback(callback);
+        } else {
+            slot.nextSame = first.nextSame;
+            first.nextSame = slot;
+        }
+    }
+
+    private void unsubscribe(final Slot slot) {
+        if (!(slot.item instanceof Observable)) {
+            return;
+        }
+        Observable observable = (Observable) slot.item;
+        Slot first = slotsByItem.get(observable);
+        if (first == slot) {
+            if (slot.nextSame == null) {
+                slotsByItem.remove(observable);
+                verdicts.remove(observable);
+                observable.removeOnPropertyChangedCallback(callback);
+            } else {
+                slotsByItem.put(observable, slot.nextSame);
+            }
+        } else {
+            Slot previous = first;
+            while (previous.nextSame != slot) {
+                previous = previous.nextSame;
+            }
+            previous.nextSame = slot.nextSame;
+        }
+        slot.nextSame = null;
+    }
+
+    private int positionOf(final Slot slot) {
+        int position = slot.offset;
+        for (int i = slot.block.index; i > 0; i -= i & -i) {
+            position += tree[i];
+        }
+        return position;
+    }
+
+    private void insertSlots(int position, final Slot[] inserted) {
+        if (inserted.length == 0) {
+            return;
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+            rebuildTree();
+        }
+
+        int blockIndex;
+        if (position == size) {
+            blockIndex = blocks.size() - 1;
+            offset = blocks.get(blockIndex).size;
+        } else {
+            blockIndex = locate(position);
+        }
+        Block block = blocks.get(blockIndex);
+        size += inserted.length;
+
+        if (block.size + inserted.length <= BLOCK_SIZE) {
+            System.arraycopy(block.slots, offset, block.slots, offset + inserted.length,
+                    block.size - offset);
+            System.arraycopy(inserted, 0, block.slots, offset, inserted.length);
+            block.size += inserted.length;
+            block.renumber(offset);
+            for (int i = blockIndex + 1; i < tree.length; i += i & -i) {
+                tree[i] += inserted.length;
+            }
+            return;
+        }
+
+        // splits the block at the insertion point, and refills it and new blocks behind it
+        int tailSize = block.size - offset;
+        Slot[] tail = new Slot[tailSize];
+        System.arraycopy(block.slots, offset, tail, 0, tailSize);
+        block.truncate(offset);
+        int next = blockIndex + 1;
+        next = fill(block, next, inserted);
+        fill(blocks.get(next - 1), next, tail);
+        rebuildTree();
+    }
+
+    // appends the slots to the block, and to new blocks inserted from nextIndex when it is full
+    private int fill(Block block, int nextIndex, final Slot[] appended) {
+        for (final Slot slot : appended) {
+            if (block.size == BLOCK_SIZE) {
+                block = new Block();
+                blocks.add(nextIndex++, block);
+            }
+            block.put(block.size++, slot);
+        }
+        return nextIndex;
+    }
+
+    private Slot[] removeSlots(int position, int itemCount) {
+        Slot[] removed = new Slot[itemCount];
+        if (itemCount <= 0) {
+            return removed;
+        }
+
+        int firstBlock = locate(position);
+        int blockIndex = firstBlock;
+        int start = offset;
+        int copied = 0;
+        boolean dropped = false;
+        while (copied < itemCount) {
+            Block block = blocks.get(blockIndex);
+            int count = Math.min(itemCount - copied, block.size - start);
+            System.arraycopy(block.slots, start, removed, copied, count);
+            System.arraycopy(block.slots, start + count, block.slots, start,
+                    block.size - start - count);
+            block.truncate(block.size - count);
+            block.renumber(start);
+            copied += count;
+            if (block.size == 0) {
+                blocks.remove(blockIndex);
+                dropped = true;
+            } else {
+                if (!dropped) {
+                    for (int i = blockIndex + 1; i < tree.length; i += i & -i) {
+                        tree[i] -= count;
+                    }
+                }
+                blockIndex++;
+            }
+            start = 0;
+        }
+        size -= itemCount;
+
+        // keeps the number of blocks in O(n / BLOCK_SIZE)
+        for (int i = Math.max(firstBlock - 1, 0); i <= firstBlock && i + 1 < blocks.size(); ) {
+            Block block = blocks.get(i);
+            Block next = blocks.get(i + 1);
+            if (block.size + next.size <= BLOCK_SIZE / 2) {
+                for (int j = 0; j < next.size; ++j) {
+                    block.put(block.size++, next.slots[j]);
+                }
+                blocks.remove(i + 1);
+                dropped = true;
+            } else {
+                ++i;
+            }
+        }
+        if (dropped) {
+            rebuildTree();
+        }
+        return removed;
+    }
+
+    // returns the index of the block which contains the slot at the specified position
+    private int locate(int position) {
+        int blockIndex = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            int next = blockIndex + step;
+            if (next <= blocks.size() && tree[next] <= remaining) {
+                blockIndex = next;
+                remaining -= tree[next];
+            }
+        }
+        offset = remaining;
+        return blockIndex;
+    }
+
+    // O(number of blocks), which is paid only when a block is split, merged or dropped
+    private void rebuildTree() {
+        int count = blocks.size();
+        tree = new int[count + 1];
+        for (int i = 1; i <= count; ++i) {
+            blocks.get(i - 1).index = i - 1;
+            tree[i] += blocks.get(i - 1).size;
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Occurrence of an {@link Observable} element, or of any element in an index which keeps
+     * the elements, in the source.
+     */
+    private static final class Slot {
+        final Object item;
+        Block block;
+        int offset;
+        Slot nextSame; // the next occurrence of the same instance, in no particular order
+
+        Slot(final Object item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Block of slots, where null stands for an element which is neither {@link Observable} nor
+     * kept.
+     */
+    private static final class Block {
+        final Slot[] slots = new Slot[BLOCK_SIZE];
+        int size;
+        int index; // in the list of blocks
+
+        void put(int offset, final Slot slot) {
+            slots[offset] = slot;
+            if (slot != null) {
+                slot.block = this;
+                slot.offset = offset;
+            }
+        }
+
+        void renumber(int from) {
+            for (int i = from; i < size; ++i) {
+                if (slots[i] != null) {
+                    slots[i].block = this;
+                    slots[i].offset = i;
+                }
+            }
+        }
+
+        void truncate(int newSize) {
+            for (int i = newSize; i < size; ++i) {
+                slots[i] = null;
+            }
+            size = newSize;
+        }
+    }
+}
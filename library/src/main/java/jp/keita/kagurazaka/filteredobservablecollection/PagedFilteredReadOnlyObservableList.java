@@ -0,0 +1,401 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+
+/**
+ * Real-time filtered {@link ObservableList} which shows only a window of the matches.
+ * <p>
+ * This list contains at most {@code limit} elements which pass the filter, starting from the
+ * {@code offset}-th one. The filter is evaluated lazily from the head of the source only until
+ * the window is full, so the filter cost and the memory use depend on the window rather than on
+ * the size of the source. Only the elements up to the evaluated frontier are observed for
+ * property changes. More pages are loaded on demand by {@link #loadMore()}.
+ *
+ * @param <T> the type of elements
+ */
+public class PagedFilteredReadOnlyObservableList<T> extends ReadOnlyArrayList<T>
+        implements ObservableList<T>, Closeable {
+    private final ObservableList<T> source;
+    private final FilteredPositions<T> matches = new FilteredPositions<>(); // the evaluated head
+    private final ChangeLog matchChanges = new ChangeLog();
+    private final SourceSubscription<T> subscription;
+    private final int offset;
+    private final int pageSize;
+    private int limit;
+    private Filter<T> filter;
+    private final FilterDependency dependency = new FilterDependency();
+    private transient ListChangeRegistry registry;
+
+    /**
+     * Creates a new {@code PagedFilteredReadOnlyObservableList} instance with the specified
+     * filter and window.
+     *
+     * @param source an {@link ObservableList} to be filtered
+     * @param filter a filter which elements must pass
+     * @param offset the number of leading matches to skip
+     * @param limit  the maximum number of elements, which is also the size of a page
+     */
+    public PagedFilteredReadOnlyObservableList(final ObservableList<T> source,
+                                               final Filter<T> filter, int offset, int limit) {
+        super("PagedFilteredReadOnlyObservableList");
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative.");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive.");
+        }
+        this.source = source;
+        this.offset = offset;
+        this.pageSize = limit;
+        this.limit = limit;
+        updateFilter(filter);
+
+        // observe the source list and the evaluated elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                onChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                onItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                onItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                onItemRangeMoved(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                onItemRangeRemoved(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                PagedFilteredReadOnlyObservableList.this.onItemPropertyChanged(sourceIndex,
+                        propertyId);
+            }
+        }, true);
+        subscription.open();
+
+        // setup
+        fillWindow(new ChangeLog());
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Adds a callback to be notified when changes to the list occur.
+     *
+     * @param listener a callback to be added
+     */
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry == null) {
+            registry = new ListChangeRegistry();
+        }
+        registry.add(listener);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param listener a callback to be removed
+     */
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry != null) {
+            registry.remove(listener);
+        }
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the current maximum number of elements, which grows by a page on each
+     * {@link #loadMore()}.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns whether there is a match after the window, evaluating the source only until the
+     * next match is found.
+     */
+    public boolean hasMore() {
+        return evaluateUntil(offset + limit + 1);
+    }
+
+    /**
+     * Extends the window by a page. The loaded elements are reported as an insertion.
+     */
+    public void loadMore() {
+        limit += pageSize;
+
+        ChangeLog changes = new ChangeLog();
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    /**
+     * Sets the specified filter to this {@code PagedFilteredReadOnlyObservableList}.
+     * <p>
+     * The source is evaluated again only until the window is full, and the elements of the
+     * window which differ are reported as a removal and an insertion.
+     *
+     * @param filter a filter to be set
+     */
+    public void setFilter(final Filter<T> filter) {
+        updateFilter(filter);
+
+        ArrayList<T> oldWindow = new ArrayList<>(this);
+        matches.clear();
+        clearInternal();
+        fillWindow(new ChangeLog());
+
+        // only the middle part between the unchanged head and tail is reported
+        int head = 0;
+        int tailLimit = Math.min(oldWindow.size(), size());
+        while (head < tailLimit && oldWindow.get(head) == get(head)) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < tailLimit - head
+                && oldWindow.get(oldWindow.size() - 1 - tail) == get(size() - 1 - tail)) {
+            tail++;
+        }
+        ChangeLog changes = new ChangeLog();
+        changes.add(ChangeLog.REMOVED, head, oldWindow.size() - head - tail);
+        changes.add(ChangeLog.INSERTED, head, size() - head - tail);
+        notifyChanges(changes);
+    }
+
+    private void updateFilter(final Filter<T> filter) {
+        this.filter = filter;
+        dependency.update(filter);
+    }
+
+    // advances the frontier until the specified number of matches are known
+    private boolean evaluateUntil(int matchCount) {
+        while (matches.count() < matchCount && matches.size() < source.size()) {
+            T item = source.get(matches.size());
+            matches.append(item, filter.execute(item));
+        }
+        subscription.resizePrefix(matches.size());
+        return matches.count() >= matchCount;
+    }
+
+    private boolean isInsideFrontier(int positionStart, int itemCount) {
+        int frontier = matches.size();
+        return positionStart < frontier
+                || (positionStart == frontier && frontier == source.size() - itemCount);
+    }
+
+    private void fillWindow(final ChangeLog changes) {
+        evaluateUntil(offset + limit);
+
+        int oldSize = size();
+        int newSize = Math.max(Math.min(matches.count() - offset, limit), 0);
+        for (int i = oldSize; i < newSize; ++i) {
+            addInternal(source.get(matches.select(offset + i)));
+        }
+        changes.add(ChangeLog.INSERTED, oldSize, newSize - oldSize);
+    }
+
+    // updates the window after matches are inserted to the index at the specified rank
+    private void onMatchesInserted(int rank, int matchCount, final ChangeLog changes) {
+        int position = Math.max(rank - offset, 0);
+        int oldSize = size();
+        if (matchCount == 0 || position >= limit || position > oldSize) {
+            return;
+        }
+
+        // the window may be short here, so it only grows by the inserted matches
+        int newSize = Math.min(Math.min(limit, oldSize + matchCount),
+                Math.max(matches.count() - offset, 0));
+        int insertedCount = Math.min(matchCount, newSize - position);
+        int keptCount = Math.max(newSize - position - matchCount, 0);
+
+        // the elements pushed out of the window are dropped first
+        removeRangeInternal(position + keptCount, oldSize);
+        changes.add(ChangeLog.REMOVED, position + keptCount, oldSize - position - keptCount);
+        for (int i = 0; i < insertedCount; ++i) {
+            addInternal(position + i, source.get(matches.select(offset + position + i)));
+        }
+        changes.add(ChangeLog.INSERTED, position, insertedCount);
+    }
+
+    // updates the window before matches at the specified rank are removed from the index
+    private void onMatchesRemoved(int rank, int matchCount, final ChangeLog changes) {
+        int position = Math.max(rank - offset, 0);
+        int oldSize = size();
+        if (position >= oldSize) {
+            return;
+        }
+
+        // the window is filled up again by fillWindow() after the index is updated
+        int removedCount = Math.min(matchCount, oldSize - position);
+        removeRangeInternal(position, position + removedCount);
+        changes.add(ChangeLog.REMOVED, position, removedCount);
+    }
+
+    // updates the window after matches at the specified rank are changed
+    private void onMatchesChanged(int rank, int matchCount, final ChangeLog changes) {
+        int from = Math.max(rank - offset, 0);
+        int to = Math.min(rank + matchCount - offset, size());
+        for (int i = from; i < to; ++i) {
+            setInternal(i, source.get(matches.select(offset + i)));
+        }
+        changes.add(ChangeLog.CHANGED, from, to - from);
+    }
+
+    // applies the changes of the matches logged by the last update of the index to the window
+    private void applyMatchChanges(final ChangeLog changes) {
+        for (int i = 0; i < matchChanges.size(); ++i) {
+            int rank = matchChanges.positionStartAt(i);
+            int matchCount = matchChanges.itemCountAt(i);
+            switch (matchChanges.typeAt(i)) {
+                case ChangeLog.CHANGED:
+                    onMatchesChanged(rank, matchCount, changes);
+                    break;
+                case ChangeLog.INSERTED:
+                    onMatchesInserted(rank, matchCount, changes);
+                    break;
+                case ChangeLog.REMOVED:
+                    onMatchesRemoved(rank, matchCount, changes);
+                    break;
+                default:
+                    throw new IllegalStateException("never reached");
+            }
+        }
+        matchChanges.clear();
+    }
+
+    private void updateItem(int sourceIndex, boolean isTarget, final ChangeLog changes) {
+        matches.update(sourceIndex, source.get(sourceIndex), isTarget, matchChanges);
+        applyMatchChanges(changes);
+    }
+
+    private void insertItems(int positionStart, int itemCount, final ChangeLog changes) {
+        // elements beyond the frontier are evaluated when the window reaches them
+        if (!isInsideFrontier(positionStart, itemCount)) {
+            return;
+        }
+
+        matches.insert(positionStart, itemCount);
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            if (filter.execute(item)) {
+                matches.appear(i, item, matchChanges);
+            }
+        }
+        applyMatchChanges(changes);
+    }
+
+    private void removeItems(int positionStart, int itemCount, final ChangeLog changes) {
+        int end = Math.min(positionStart + itemCount, matches.size());
+        if (positionStart >= end) {
+            return;
+        }
+
+        matches.remove(positionStart, end - positionStart, matchChanges);
+        applyMatchChanges(changes);
+    }
+
+    private void onChanged() {
+        matches.clear();
+        clearInternal();
+        fillWindow(new ChangeLog());
+
+        notifyReset();
+    }
+
+    private void onItemPropertyChanged(int sourceIndex, int propertyId) {
+        if (sourceIndex >= matches.size()) {
+            return; // not evaluated yet
+        }
+
+        boolean isTarget = dependency.isDependentOn(propertyId)
+                ? filter.execute(source.get(sourceIndex))
+                : matches.isMember(sourceIndex);
+
+        ChangeLog changes = new ChangeLog();
+        updateItem(sourceIndex, isTarget, changes);
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeChanged(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        int end = Math.min(positionStart + itemCount, matches.size());
+        for (int i = positionStart; i < end; ++i) {
+            updateItem(i, filter.execute(source.get(i)), changes);
+        }
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeInserted(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        insertItems(positionStart, itemCount, changes);
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        // handled as a removal followed by an insertion, since the moved range may cross the
+        // frontier; the window is filled only after both, as the source is already moved
+        ChangeLog changes = new ChangeLog();
+        removeItems(fromPosition, itemCount, changes);
+        int actualToPosition = toPosition < fromPosition ? toPosition : toPosition - itemCount;
+        insertItems(actualToPosition, itemCount, changes);
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeRemoved(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        removeItems(positionStart, itemCount, changes);
+        fillWindow(changes);
+        notifyChanges(changes);
+    }
+
+    private void notifyChanges(final ChangeLog changes) {
+        if (registry != null) {
+            changes.dispatch(registry, this);
+        }
+    }
+
+    private void notifyReset() {
+        if (registry != null) {
+            registry.notifyChanged(this);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates a filter over a list in chunks on an {@link Executor}.
+ * <p>
+ * Each chunk writes the verdicts into its own slice of the result, so no merging is needed and
+ * the caller stitches the result into the index in one pass. The chunks are claimed one by one
+ * by the calling thread and by the tasks given to the executor, so the evaluation never waits
+ * for a task which has not started, e.g. on a saturated executor or one which runs on the
+ * calling thread.
+ */
+final class ParallelEvaluator {
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private ParallelEvaluator() {
+    }
+
+    /**
+     * Evaluates the filter for every element of the list. The calling thread evaluates the
+     * chunks which no task has claimed by itself, and then waits only for the chunks being
+     * evaluated by the tasks. A task rejected by the executor leaves its chunks to the others.
+     */
+    static <T> boolean[] evaluate(final List<T> source, final Filter<T> filter,
+                                  final Executor executor) {
+        final boolean[] passed = new boolean[source.size()];
+        if (passed.length == 0) {
+            return passed;
+        }
+        int targetCount = Math.max(Runtime.getRuntime().availableProcessors() * 2, 2);
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                (passed.length + targetCount - 1) / targetCount);
+        final int chunkCount = (passed.length + chunkSize - 1) / chunkSize;
+
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(chunkCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int chunk = nextChunk.getAndIncrement(); chunk < chunkCount;
+                     chunk = nextChunk.getAndIncrement()) {
+                    try {
+                        // the remaining chunks are only counted down after a failure
+                        if (failure.get() == null) {
+                            int from = chunk * chunkSize;
+                            evaluate(source, filter, passed, from,
+                                    Math.min(from + chunkSize, passed.length));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }
+        };
+        for (int task = 0; task < chunkCount - 1; ++task) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break; // the calling thread claims the chunks
+            }
+        }
+        worker.run();
+        awaitUninterruptibly(latch);
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new RuntimeException(e);
+        }
+        return passed;
+    }
+
+    private static <T> void evaluate(final List<T> source, final Filter<T> filter,
+                                     final boolean[] passed, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            passed[i] = filter.execute(source.get(i));
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
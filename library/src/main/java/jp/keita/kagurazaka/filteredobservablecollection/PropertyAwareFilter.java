@@ -0,0 +1,23 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+/**
+ * {@link Filter} whose result depends only on some properties of
+ * {@link android.databinding.Observable} elements.
+ * <p>
+ * When an element notifies a change of a property that this filter does not depend on,
+ * {@link FilteredReadOnlyObservableList} skips the filter and just reports the element as changed
+ * if it is visible.
+ *
+ * @param <T> the type of collection elements to be filtered
+ */
+public interface PropertyAwareFilter<T> extends Filter<T> {
+    /**
+     * Returns the ids of the properties which the result of this filter depends on, e.g.
+     * {@code BR.isCompleted}. A change notified for {@code BR._all} (0) is always regarded as
+     * relevant.
+     *
+     * @return the ids of the properties which this filter depends on, or null if it may depend
+     * on any property
+     */
+    int[] getDependentPropertyIds();
+}
@@ -0,0 +1,461 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.ArrayList;
+
+/**
+ * Blocked bitset over the membership bits of source elements.
+ * <p>
+ * Maps a source index to its position in the filtered list (and back) in O(log n) time, so that
+ * filtered positions are computed on demand instead of being stored per element. The bits are
+ * kept in blocks of {@link #BLOCK_SIZE}, located through Fenwick trees over the block sizes and
+ * the block member counts. A membership toggle updates one bit and the count tree in O(log n).
+ * Inserting or removing slots shifts the bits of the blocks it touches only, and rebuilds the
+ * trees in O(n / BLOCK_SIZE) only when a block is split, merged or dropped, instead of
+ * recomputing the whole tail of the index.
+ */
+final class RankIndex {
+    static final int BLOCK_SIZE = 1024;
+    private static final int WORD_COUNT = BLOCK_SIZE / 64;
+
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    private int[] sizeTree = new int[1]; // 1-based, over the block sizes
+    private int[] countTree = new int[1]; // 1-based, over the block member counts
+    private int size;
+    private int count;
+    private int offset; // the offset in the block found by the last locate()
+    private int cachedBlock = -1; // the block found by the last locate(), for sequential access
+    private int cachedStart;
+
+    /**
+     * Returns the number of source elements.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of source elements that pass the filter.
+     */
+    int count() {
+        return count;
+    }
+
+    boolean isMember(int sourceIndex) {
+        return blocks.get(locate(sourceIndex)).get(offset);
+    }
+
+    /**
+     * Returns the number of members before the specified source index, i.e. the filtered index
+     * of the element at {@code sourceIndex} if it is a member.
+     */
+    int rank(int sourceIndex) {
+        if (sourceIndex >= size) {
+            return count;
+        }
+        int blockIndex = locate(sourceIndex);
+        return prefixSum(countTree, blockIndex) + blocks.get(blockIndex).countBefore(offset);
+    }
+
+    /**
+     * Returns the source index of the member at the specified filtered index.
+     */
+    int select(int filteredIndex) {
+        if (filteredIndex >= count) {
+            return size;
+        }
+        // both trees cover the same block ranges, so the sizes are summed along the way
+        int position = 0;
+        int start = 0;
+        int remaining = filteredIndex;
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= blocks.size() && countTree[next] <= remaining) {
+                position = next;
+                start += sizeTree[next];
+                remaining -= countTree[next];
+            }
+        }
+        return start + blocks.get(position).select(remaining);
+    }
+
+    /**
+     * Sets the membership of the specified source element.
+     *
+     * @return true if the membership changed
+     */
+    boolean set(int sourceIndex, boolean member) {
+        int blockIndex = locate(sourceIndex);
+        Block block = blocks.get(blockIndex);
+        if (block.get(offset) == member) {
+            return false;
+        }
+        block.put(offset, member);
+        int delta = member ? 1 : -1;
+        block.count += delta;
+        add(countTree, blockIndex, delta);
+        count += delta;
+        return true;
+    }
+
+    /**
+     * Inserts non-member slots at the specified source index.
+     */
+    void insert(int sourceIndex, int itemCount) {
+        if (itemCount == 0) {
+            return;
+        }
+        int blockIndex = locateForInsertion(sourceIndex);
+        Block block = blocks.get(blockIndex);
+        size += itemCount;
+        cachedBlock = -1;
+        if (block.size + itemCount <= BLOCK_SIZE) {
+            block.insertZeros(offset, itemCount);
+            add(sizeTree, blockIndex, itemCount);
+            return;
+        }
+
+        // split the block and put blocks of non-members in between
+        Block upper = block.split(offset);
+        int remaining = itemCount;
+        int filled = Math.min(remaining, BLOCK_SIZE - block.size);
+        block.size += filled;
+        remaining -= filled;
+        ArrayList<Block> inserted = new ArrayList<>();
+        while (remaining > 0) {
+            Block zeros = new Block();
+            zeros.size = Math.min(remaining, BLOCK_SIZE);
+            remaining -= zeros.size;
+            inserted.add(zeros);
+        }
+        inserted.add(upper);
+        blocks.addAll(blockIndex + 1, inserted);
+        compact(blockIndex - 1, blockIndex + inserted.size() + 1);
+        rebuildTrees();
+    }
+
+    /**
+     * Removes slots starting at the specified source index.
+     */
+    void remove(int sourceIndex, int itemCount) {
+        if (itemCount == 0) {
+            return;
+        }
+        int firstBlock = locate(sourceIndex);
+        int lastBlock = firstBlock;
+        int position = offset;
+        int remaining = itemCount;
+        int removedCount = 0;
+        while (true) {
+            Block block = blocks.get(lastBlock);
+            int removed = Math.min(remaining, block.size - position);
+            removedCount += block.removeBits(position, removed);
+            remaining -= removed;
+            if (remaining == 0) {
+                break;
+            }
+            position = 0;
+            lastBlock++;
+        }
+        size -= itemCount;
+        count -= removedCount;
+        cachedBlock = -1;
+
+        if (compact(firstBlock - 1, lastBlock + 1) || lastBlock > firstBlock) {
+            rebuildTrees();
+        } else {
+            add(sizeTree, firstBlock, -itemCount);
+            add(countTree, firstBlock, -removedCount);
+        }
+    }
+
+    /**
+     * Moves {@code itemCount} slots from {@code fromIndex} to {@code toIndex}, where
+     * {@code toIndex} is an index before the move.
+     */
+    void move(int fromIndex, int toIndex, int itemCount) {
+        if (fromIndex <= toIndex && toIndex <= fromIndex + itemCount) {
+            return;
+        }
+        boolean[] moved = new boolean[itemCount];
+        for (int i = 0; i < itemCount; ++i) {
+            moved[i] = isMember(fromIndex + i);
+        }
+        remove(fromIndex, itemCount);
+        int insertionIndex = toIndex < fromIndex ? toIndex : toIndex - itemCount;
+        insert(insertionIndex, itemCount);
+        for (int i = 0; i < itemCount; ++i) {
+            if (moved[i]) {
+                set(insertionIndex + i, true);
+            }
+        }
+    }
+
+    /**
+     * Removes all slots.
+     */
+    void clear() {
+        blocks.clear();
+        size = 0;
+        count = 0;
+        rebuildTrees();
+    }
+
+    /**
+     * Rebuilds the trees after the membership bits have been rewritten in bulk through
+     * {@link #resize(int)} and {@link #setQuietly(int, boolean)}.
+     */
+    void rebuild() {
+        count = 0;
+        for (final Block block : blocks) {
+            block.recount();
+            count += block.count;
+        }
+        rebuildTrees();
+    }
+
+    /**
+     * Resizes this index to the specified number of slots, all of which become non-members.
+     */
+    void resize(int newSize) {
+        blocks.clear();
+        for (int remaining = newSize; remaining > 0; remaining -= BLOCK_SIZE) {
+            Block block = new Block();
+            block.size = Math.min(remaining, BLOCK_SIZE);
+            blocks.add(block);
+        }
+        size = newSize;
+        count = 0;
+        rebuildTrees();
+    }
+
+    /**
+     * Sets the membership bit without updating the tree. {@link #rebuild()} must be called
+     * afterwards.
+     */
+    void setQuietly(int sourceIndex, boolean member) {
+        blocks.get(locate(sourceIndex)).put(offset, member);
+    }
+
+    // returns the index of the block which contains the slot at the specified source index
+    private int locate(int sourceIndex) {
+        if (cachedBlock >= 0) {
+            int position = sourceIndex - cachedStart;
+            if (position >= 0 && position < blocks.get(cachedBlock).size) {
+                offset = position;
+                return cachedBlock;
+            }
+        }
+
+        int position = 0;
+        int remaining = sourceIndex;
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= blocks.size() && sizeTree[next] <= remaining) {
+                position = next;
+                remaining -= sizeTree[next];
+            }
+        }
+        offset = remaining;
+        cachedBlock = position;
+        cachedStart = sourceIndex - remaining;
+        return position;
+    }
+
+    // same as locate() except that the end of the index is located in the last block
+    private int locateForInsertion(int sourceIndex) {
+        if (sourceIndex != size) {
+            return locate(sourceIndex);
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+            rebuildTrees();
+        }
+        int last = blocks.size() - 1;
+        offset = blocks.get(last).size;
+        return last;
+    }
+
+    // drops the empty blocks and merges the sparse neighbours between the specified blocks,
+    // which keeps the number of blocks in O(n / BLOCK_SIZE); returns true if the blocks changed
+    private boolean compact(int fromBlock, int toBlock) {
+        boolean compacted = false;
+        int i = Math.max(fromBlock, 0);
+        int end = Math.min(toBlock, blocks.size() - 1);
+        while (i <= end) {
+            Block block = blocks.get(i);
+            if (block.size == 0) {
+                blocks.remove(i);
+                end--;
+                compacted = true;
+            } else if (i < end && block.size + blocks.get(i + 1).size <= BLOCK_SIZE / 2) {
+                block.append(blocks.remove(i + 1));
+                end--;
+                compacted = true;
+            } else {
+                i++;
+            }
+        }
+        return compacted;
+    }
+
+    // O(number of blocks), which is paid only when a block is split, merged or dropped
+    private void rebuildTrees() {
+        int blockCount = blocks.size();
+        sizeTree = new int[blockCount + 1];
+        countTree = new int[blockCount + 1];
+        for (int i = 1; i <= blockCount; ++i) {
+            Block block = blocks.get(i - 1);
+            sizeTree[i] += block.size;
+            countTree[i] += block.count;
+            int parent = i + (i & -i);
+            if (parent <= blockCount) {
+                sizeTree[parent] += sizeTree[i];
+                countTree[parent] += countTree[i];
+            }
+        }
+        cachedBlock = -1;
+    }
+
+    private static void add(final int[] tree, int blockIndex, int delta) {
+        for (int i = blockIndex + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private static int prefixSum(final int[] tree, int blockIndex) {
+        int sum = 0;
+        for (int i = blockIndex; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // bits of the specified word whose positions in the block are in [from, to)
+    private static long mask(int word, int from, int to) {
+        int low = Math.max(from - (word << 6), 0);
+        int high = Math.min(to - (word << 6), 64);
+        if (low >= high) {
+            return 0;
+        }
+        return (high == 64 ? -1L : (1L << high) - 1) & (-1L << low);
+    }
+
+    // the bits above size are always zero
+    private static final class Block {
+        final long[] words = new long[WORD_COUNT];
+        int size;
+        int count;
+
+        boolean get(int position) {
+            return (words[position >>> 6] & (1L << position)) != 0;
+        }
+
+        void put(int position, boolean member) {
+            if (member) {
+                words[position >>> 6] |= 1L << position;
+            } else {
+                words[position >>> 6] &= ~(1L << position);
+            }
+        }
+
+        int countBefore(int position) {
+            int sum = 0;
+            int word = position >>> 6;
+            for (int i = 0; i < word; ++i) {
+                sum += Long.bitCount(words[i]);
+            }
+            if ((position & 63) != 0) {
+                sum += Long.bitCount(words[word] & ((1L << position) - 1));
+            }
+            return sum;
+        }
+
+        // returns the position of the member which has the specified number of members before it
+        int select(int rank) {
+            int remaining = rank;
+            for (int i = 0; ; ++i) {
+                int bits = Long.bitCount(words[i]);
+                if (remaining < bits) {
+                    long word = words[i];
+                    for (int j = 0; j < remaining; ++j) {
+                        word &= word - 1;
+                    }
+                    return (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                remaining -= bits;
+            }
+        }
+
+        void insertZeros(int position, int itemCount) {
+            // from the top, so that the shifted bits are read before being overwritten
+            for (int i = WORD_COUNT - 1; i >= 0; --i) {
+                long shifted = bitsAt((i << 6) - itemCount)
+                        & mask(i, position + itemCount, size + itemCount);
+                words[i] = (words[i] & mask(i, 0, position)) | shifted;
+            }
+            size += itemCount;
+        }
+
+        // returns the number of the removed members
+        int removeBits(int position, int itemCount) {
+            int removed = countBefore(position + itemCount) - countBefore(position);
+            for (int i = 0; i < WORD_COUNT; ++i) {
+                long shifted = bitsAt((i << 6) + itemCount) & mask(i, position, size - itemCount);
+                words[i] = (words[i] & mask(i, 0, position)) | shifted;
+            }
+            size -= itemCount;
+            count -= removed;
+            return removed;
+        }
+
+        // moves the bits at and after the specified position to a new block
+        Block split(int position) {
+            Block upper = new Block();
+            for (int i = 0; i < WORD_COUNT; ++i) {
+                upper.words[i] = bitsAt((i << 6) + position) & mask(i, 0, size - position);
+            }
+            upper.size = size - position;
+            int lowerCount = countBefore(position);
+            upper.count = count - lowerCount;
+
+            for (int i = 0; i < WORD_COUNT; ++i) {
+                words[i] &= mask(i, 0, position);
+            }
+            size = position;
+            count = lowerCount;
+            return upper;
+        }
+
+        void append(final Block next) {
+            for (int i = 0; i < WORD_COUNT; ++i) {
+                words[i] |= next.bitsAt((i << 6) - size) & mask(i, size, size + next.size);
+            }
+            size += next.size;
+            count += next.count;
+        }
+
+        void recount() {
+            count = 0;
+            for (final long word : words) {
+                count += Long.bitCount(word);
+            }
+        }
+
+        // 64 bits starting at the specified position, which may be negative
+        private long bitsAt(int position) {
+            if (position < 0) {
+                return position <= -64 ? 0 : words[0] << -position;
+            }
+            int word = position >>> 6;
+            if (word >= WORD_COUNT) {
+                return 0;
+            }
+            int shift = position & 63;
+            long bits = words[word] >>> shift;
+            if (shift != 0 && word + 1 < WORD_COUNT) {
+                bits |= words[word + 1] << (64 - shift);
+            }
+            return bits;
+        }
+    }
+}
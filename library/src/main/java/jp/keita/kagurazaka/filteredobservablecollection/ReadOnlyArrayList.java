@@ -0,0 +1,163 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * {@link ArrayList} which rejects modifications from outside of this package.
+ * <p>
+ * The public mutators throw {@link UnsupportedOperationException}, and subclasses update their
+ * contents through the package-private counterparts instead.
+ *
+ * @param <T> the type of elements
+ */
+abstract class ReadOnlyArrayList<T> extends ArrayList<T> {
+    private final String immutableMessage;
+
+    ReadOnlyArrayList(final String name) {
+        immutableMessage = name + " is immutable.";
+    }
+
+    @Override
+    public boolean add(T object) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public void add(int index, T object) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public boolean addAll(@NonNull Collection<? extends T> collection) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public boolean addAll(int index, @NonNull Collection<? extends T> collection) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public T remove(int index) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public boolean removeAll(@NonNull Collection<?> collection) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public boolean retainAll(@NonNull Collection<?> collection) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    public T set(int index, T object) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        throw new UnsupportedOperationException(immutableMessage);
+    }
+
+    void addInternal(T object) {
+        super.add(object);
+    }
+
+    void addInternal(int index, T object) {
+        super.add(index, object);
+    }
+
+    void addAllInternal(final Collection<? extends T> collection) {
+        super.addAll(collection);
+    }
+
+    void addAllInternal(int index, final Collection<? extends T> collection) {
+        super.addAll(index, collection);
+    }
+
+    void clearInternal() {
+        super.clear();
+    }
+
+    T removeInternal(int index) {
+        return super.remove(index);
+    }
+
+    void removeRangeInternal(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+    }
+
+    T setInternal(int index, T object) {
+        return super.set(index, object);
+    }
+
+    /**
+     * Moves {@code itemCount} elements from {@code fromIndex} to {@code toIndex}, where
+     * {@code toIndex} is an index before the move, by rotating the elements in between in place.
+     */
+    void moveRangeInternal(int fromIndex, int toIndex, int itemCount) {
+        if (toIndex < fromIndex) {
+            reverseRange(toIndex, fromIndex);
+            reverseRange(fromIndex, fromIndex + itemCount);
+            reverseRange(toIndex, fromIndex + itemCount);
+        } else {
+            reverseRange(fromIndex, fromIndex + itemCount);
+            reverseRange(fromIndex + itemCount, toIndex);
+            reverseRange(fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * Returns the view through which {@link FilteredPositions} updates the contents.
+     */
+    FilteredPositions.Elements<T> asElements() {
+        return new FilteredPositions.Elements<T>() {
+            @Override
+            public void insert(int index, T item) {
+                addInternal(index, item);
+            }
+
+            @Override
+            public void set(int index, T item) {
+                setInternal(index, item);
+            }
+
+            @Override
+            public void removeRange(int fromIndex, int toIndex) {
+                removeRangeInternal(fromIndex, toIndex);
+            }
+
+            @Override
+            public void move(int fromIndex, int toIndex, int itemCount) {
+                moveRangeInternal(fromIndex, toIndex, itemCount);
+            }
+
+            @Override
+            public void clear() {
+                clearInternal();
+            }
+        };
+    }
+
+    private void reverseRange(int fromIndex, int toIndex) {
+        for (int i = fromIndex, j = toIndex - 1; i < j; ++i, --j) {
+            setInternal(j, setInternal(i, super.get(j)));
+        }
+    }
+}
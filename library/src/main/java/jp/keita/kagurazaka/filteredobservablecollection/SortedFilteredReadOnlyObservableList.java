@@ -0,0 +1,573 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.Observable;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * Real-time filtered and sorted {@link ObservableList}.
+ * <p>
+ * The elements which pass the filter are kept in the order of the comparator. Elements that
+ * compare equal keep the order in which they appeared, except that the copies of an element
+ * contained more than once in the source are kept together.
+ *
+ * @param <T> the type of elements
+ */
+public class SortedFilteredReadOnlyObservableList<T> extends ReadOnlyArrayList<T>
+        implements ObservableList<T>, Closeable {
+    // beyond which a new comparator is reported as a removal and an insertion of the reordered
+    // range, since the listeners shift the list once for each move
+    private static final int MAX_REPORTED_MOVES = 32;
+
+    private final ObservableList<T> source;
+    private final RankIndex members = new RankIndex();
+    private final SourceSubscription<T> subscription;
+    private Filter<T> filter;
+    private final FilterDependency dependency = new FilterDependency();
+    private Comparator<? super T> comparator;
+    private IdentityIntMap labels = new IdentityIntMap(); // increasing along this list
+    private transient ListChangeRegistry registry;
+
+    /**
+     * Creates a new {@code SortedFilteredReadOnlyObservableList} instance with the specified
+     * filter and comparator.
+     *
+     * @param source     an {@link ObservableList} to be filtered and sorted
+     * @param filter     a filter which elements must pass
+     * @param comparator a comparator which orders the elements
+     */
+    public SortedFilteredReadOnlyObservableList(final ObservableList<T> source,
+                                                final Filter<T> filter,
+                                                final Comparator<? super T> comparator) {
+        super("SortedFilteredReadOnlyObservableList");
+        this.source = source;
+        this.comparator = comparator;
+        updateFilter(filter);
+
+        // setup
+        rebuild();
+
+        // observe the source list and its elements
+        subscription = new SourceSubscription<>(source, new SourceSubscription.Listener() {
+            @Override
+            public void onSourceChanged() {
+                onChanged();
+            }
+
+            @Override
+            public void onSourceRangeChanged(int positionStart, int itemCount) {
+                onItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeInserted(int positionStart, int itemCount) {
+                onItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                onItemRangeMoved(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onSourceRangeRemoved(int positionStart, int itemCount) {
+                onItemRangeRemoved(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemPropertyChanged(int sourceIndex, int propertyId) {
+                SortedFilteredReadOnlyObservableList.this.onItemPropertyChanged(sourceIndex,
+                        propertyId);
+            }
+        }, false, true); // removed elements are needed to find them in this list
+        subscription.open();
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        subscription.setWeak(enabled);
+    }
+
+    /**
+     * Adds a callback to be notified when changes to the list occur.
+     *
+     * @param listener a callback to be added
+     */
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry == null) {
+            registry = new ListChangeRegistry();
+        }
+        registry.add(listener);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param listener a callback to be removed
+     */
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry != null) {
+            registry.remove(listener);
+        }
+    }
+
+    /**
+     * Sets the specified filter to this {@code SortedFilteredReadOnlyObservableList}.
+     * <p>
+     * The elements which disappear are reported as removals, and the elements which appear are
+     * reported as insertions at their sorted positions.
+     *
+     * @param filter a filter to be set
+     */
+    public void setFilter(final Filter<T> filter) {
+        updateFilter(filter);
+
+        ChangeLog changes = new ChangeLog();
+        IdentityHashMap<T, Boolean> disappeared = new IdentityHashMap<>();
+        boolean[] appeared = new boolean[members.size()];
+        for (int i = 0; i < appeared.length; ++i) {
+            T item = source.get(i);
+            boolean isVisible = members.isMember(i);
+            boolean isTarget = filter.execute(item);
+            if (isVisible && !isTarget) {
+                members.set(i, false);
+                disappeared.put(item, Boolean.TRUE);
+            } else if (!isVisible && isTarget) {
+                appeared[i] = true;
+            }
+        }
+
+        if (!disappeared.isEmpty()) {
+            ArrayList<T> remaining = new ArrayList<>(size());
+            for (int i = 0; i < size(); ++i) {
+                T item = get(i);
+                if (disappeared.containsKey(item)) {
+                    changes.add(ChangeLog.REMOVED, remaining.size(), 1);
+                } else {
+                    remaining.add(item);
+                }
+            }
+            clearInternal();
+            addAllInternal(remaining);
+            for (final T item : disappeared.keySet()) {
+                labels.remove(item);
+            }
+        }
+        for (int i = 0; i < appeared.length; ++i) {
+            if (appeared[i]) {
+                changes.add(ChangeLog.INSERTED, appearItem(i), 1);
+            }
+        }
+
+        notifyChanges(changes);
+    }
+
+    /**
+     * Sets the specified comparator to this {@code SortedFilteredReadOnlyObservableList}.
+     * <p>
+     * The elements are sorted again, and the fewest elements which restore the order are
+     * reported as moves. A reorder which moves many elements is reported as a removal and an
+     * insertion of the range between the first and the last element whose position changes.
+     *
+     * @param comparator a comparator to be set
+     */
+    public void setComparator(final Comparator<? super T> comparator) {
+        this.comparator = comparator;
+
+        // the sort is stable and nearly linear when the order is mostly kept
+        ArrayList<T> sorted = new ArrayList<>(this);
+        Collections.sort(sorted, comparator);
+
+        int first = 0;
+        while (first < sorted.size() && sorted.get(first) == get(first)) {
+            first++;
+        }
+        if (first == sorted.size()) {
+            return;
+        }
+        int last = sorted.size() - 1;
+        while (sorted.get(last) == get(last)) {
+            last--;
+        }
+
+        // the copies of an element are next to each other in both orders
+        IdentityIntMap targets = new IdentityIntMap();
+        for (int i = last; i >= first; --i) {
+            targets.put(sorted.get(i), i);
+        }
+        int[] order = new int[last - first + 1]; // the target of each element in the range
+        for (int i = first; i <= last; ++i) {
+            int target = targets.get(get(i));
+            order[i - first] = target;
+            targets.put(get(i), target + 1);
+        }
+        boolean[] kept = longestIncreasingRun(order);
+        int[] movedTargets = new int[order.length];
+        int moveCount = 0;
+        for (int i = 0; i < order.length; ++i) {
+            if (!kept[i]) {
+                movedTargets[moveCount++] = order[i];
+            }
+        }
+
+        ChangeLog changes = new ChangeLog();
+        if (moveCount > MAX_REPORTED_MOVES) {
+            for (int i = first; i <= last; ++i) {
+                setInternal(i, sorted.get(i));
+            }
+            changes.add(ChangeLog.REMOVED, first, order.length);
+            changes.add(ChangeLog.INSERTED, first, order.length);
+        } else {
+            // each element is placed right after the one preceding it in the new order, which
+            // has been kept or placed already
+            Arrays.sort(movedTargets, 0, moveCount);
+            for (int k = 0; k < moveCount; ++k) {
+                int target = movedTargets[k];
+                int fromIndex = indexOf(order, target);
+                T item = removeInternal(first + fromIndex);
+                removeAt(order, fromIndex);
+                int index = target == first ? 0 : indexOf(order, target - 1) + 1;
+                addInternal(first + index, item);
+                insertAt(order, index, target);
+                changes.addMove(first + fromIndex,
+                        first + (index < fromIndex ? index : index + 1), 1);
+            }
+        }
+        relabel();
+        notifyChanges(changes);
+    }
+
+    private void updateFilter(final Filter<T> filter) {
+        this.filter = filter;
+        dependency.update(filter);
+    }
+
+    private void rebuild() {
+        clearInternal();
+        members.resize(source.size());
+        ArrayList<T> distinct = new ArrayList<>();
+        IdentityIntMap copies = new IdentityIntMap();
+        for (int i = 0; i < members.size(); ++i) {
+            T item = source.get(i);
+            if (filter.execute(item)) {
+                members.setQuietly(i, true);
+                int count = copies.get(item);
+                if (count == IdentityIntMap.MISSING) {
+                    distinct.add(item);
+                    copies.put(item, 1);
+                } else {
+                    copies.put(item, count + 1);
+                }
+            }
+        }
+        members.rebuild();
+
+        // sorted aside, since sorting this list in place would go through the overridden set()
+        Collections.sort(distinct, comparator);
+        for (final T item : distinct) {
+            for (int i = copies.get(item); i > 0; --i) {
+                addInternal(item);
+            }
+        }
+        relabel();
+    }
+
+    // returns the position after the last element which does not order after the item
+    private int insertionIndex(final T item) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(get(middle), item) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // finds the first copy of the item by its label, which is kept while its sort key changes
+    private int indexOfItem(final T item) {
+        int label = labels.get(item);
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (labels.get(get(middle)) < label) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // labels the item placed at the specified index between its neighbours
+    private void assignLabel(int index) {
+        int lower = index > 0 ? labels.get(get(index - 1)) : -1;
+        int upper = index + 1 < size() ? labels.get(get(index + 1)) : Integer.MAX_VALUE;
+        long gap = (long) upper - lower;
+        if (gap < 2) {
+            relabel();
+            return;
+        }
+        labels.put(get(index), (int) (lower + gap / 2));
+    }
+
+    // spreads the labels evenly, giving the copies of an element the same one
+    private void relabel() {
+        labels = new IdentityIntMap();
+        int spacing = Integer.MAX_VALUE / (size() + 1);
+        int label = -1;
+        for (int i = 0; i < size(); ++i) {
+            if (i == 0 || get(i - 1) != get(i)) {
+                label += spacing;
+                labels.put(get(i), label);
+            }
+        }
+    }
+
+    private boolean hasCopyNextTo(final T item, int index) {
+        return (index > 0 && get(index - 1) == item) || (index < size() && get(index) == item);
+    }
+
+    private int appearItem(int sourceIndex) {
+        if (!members.set(sourceIndex, true)) {
+            return -1; // already appeared
+        }
+
+        T item = source.get(sourceIndex);
+        if (labels.get(item) != IdentityIntMap.MISSING) {
+            // placed next to the copies which are already visible
+            int index = indexOfItem(item);
+            addInternal(index, item);
+            return index;
+        }
+        int index = insertionIndex(item);
+        addInternal(index, item);
+        assignLabel(index);
+        return index;
+    }
+
+    // the item is passed, since it may have left the source already
+    private int disappearItem(int sourceIndex, final T item) {
+        if (!members.set(sourceIndex, false)) {
+            return -1; // already disappeared
+        }
+
+        int index = indexOfItem(item);
+        removeInternal(index);
+        if (!hasCopyNextTo(item, index)) {
+            labels.remove(item);
+        }
+        return index;
+    }
+
+    // moves the item to its sorted position, and logs a single move or a change
+    private void repositionItem(int sourceIndex, final ChangeLog changes) {
+        T item = source.get(sourceIndex);
+        int fromIndex = indexOfItem(item);
+        if (fromIndex + 1 < size() && get(fromIndex + 1) == item) {
+            // the copies are moved only together, by onDuplicatedItemPropertyChanged()
+            changes.add(ChangeLog.CHANGED, fromIndex, 1);
+            return;
+        }
+        removeInternal(fromIndex);
+        labels.remove(item);
+        int index = insertionIndex(item);
+        addInternal(index, item);
+        assignLabel(index);
+
+        if (index == fromIndex) {
+            changes.add(ChangeLog.CHANGED, index, 1);
+        } else {
+            // the destination is an index before the move
+            changes.addMove(fromIndex, index < fromIndex ? index : index + 1, 1);
+        }
+    }
+
+    // marks the elements of a longest strictly increasing subsequence, in O(n log n) time
+    private static boolean[] longestIncreasingRun(final int[] values) {
+        int[] tails = new int[values.length]; // the index ending each run length
+        int[] previous = new int[values.length];
+        int length = 0;
+        for (int i = 0; i < values.length; ++i) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] marked = new boolean[values.length];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            marked[i] = true;
+        }
+        return marked;
+    }
+
+    private static int indexOf(final int[] values, int value) {
+        for (int i = 0; ; ++i) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+    }
+
+    private static void removeAt(final int[] values, int index) {
+        System.arraycopy(values, index + 1, values, index, values.length - index - 1);
+    }
+
+    private static void insertAt(final int[] values, int index, int value) {
+        System.arraycopy(values, index, values, index + 1, values.length - index - 1);
+        values[index] = value;
+    }
+
+    private void onChanged() {
+        rebuild();
+
+        notifyReset();
+    }
+
+    private void onItemPropertyChanged(int sourceIndex, int propertyId) {
+        Observable observable = (Observable) source.get(sourceIndex);
+        if (subscription.indexOf(observable) != sourceIndex) {
+            return; // handled together with the first copy
+        }
+        if (subscription.nextIndexOf(observable, sourceIndex) >= 0) {
+            onDuplicatedItemPropertyChanged(observable, sourceIndex, propertyId);
+            return;
+        }
+
+        boolean isVisible = members.isMember(sourceIndex);
+        boolean isTarget = dependency.isDependentOn(propertyId)
+                ? filter.execute(source.get(sourceIndex))
+                : isVisible;
+
+        ChangeLog changes = new ChangeLog();
+        if (!isVisible && isTarget) {
+            changes.add(ChangeLog.INSERTED, appearItem(sourceIndex), 1);
+        } else if (isVisible && !isTarget) {
+            changes.add(ChangeLog.REMOVED, disappearItem(sourceIndex, source.get(sourceIndex)), 1);
+        } else if (isVisible) {
+            repositionItem(sourceIndex, changes);
+        }
+        notifyChanges(changes);
+    }
+
+    // every copy is taken out before any is placed again, since a copy left at its old
+    // position would break the binary search
+    private void onDuplicatedItemPropertyChanged(final Observable observable, int sourceIndex,
+                                                 int propertyId) {
+        boolean isVisible = members.isMember(sourceIndex);
+        boolean isTarget = dependency.isDependentOn(propertyId)
+                ? filter.execute(source.get(sourceIndex))
+                : isVisible;
+
+        ChangeLog changes = new ChangeLog();
+        for (int i = sourceIndex; i >= 0; i = subscription.nextIndexOf(observable, i)) {
+            if (members.isMember(i)) {
+                changes.add(ChangeLog.REMOVED, disappearItem(i, source.get(i)), 1);
+            }
+        }
+        if (isTarget) {
+            for (int i = sourceIndex; i >= 0; i = subscription.nextIndexOf(observable, i)) {
+                changes.add(ChangeLog.INSERTED, appearItem(i), 1);
+            }
+        }
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeChanged(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            T item = source.get(i);
+            T previous = subscription.previousElement(i);
+            boolean isVisible = members.isMember(i);
+            boolean isTarget = filter.execute(item);
+
+            if (isVisible && isTarget && previous == item) {
+                repositionItem(i, changes);
+                continue;
+            }
+            if (isVisible) {
+                changes.add(ChangeLog.REMOVED, disappearItem(i, previous), 1);
+            }
+            if (isTarget) {
+                changes.add(ChangeLog.INSERTED, appearItem(i), 1);
+            }
+        }
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeInserted(int positionStart, int itemCount) {
+        members.insert(positionStart, itemCount);
+
+        ChangeLog changes = new ChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            if (filter.execute(source.get(i))) {
+                changes.add(ChangeLog.INSERTED, appearItem(i), 1);
+            }
+        }
+        notifyChanges(changes);
+    }
+
+    private void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        // the sorted order does not depend on the source order
+        members.move(fromPosition, toPosition, itemCount);
+    }
+
+    private void onItemRangeRemoved(int positionStart, int itemCount) {
+        ChangeLog changes = new ChangeLog();
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            if (members.isMember(i)) {
+                changes.add(ChangeLog.REMOVED,
+                        disappearItem(i, subscription.previousElement(i)), 1);
+            }
+        }
+        members.remove(positionStart, itemCount);
+        notifyChanges(changes);
+    }
+
+    private void notifyChanges(final ChangeLog changes) {
+        if (registry != null) {
+            changes.dispatch(registry, this);
+        }
+    }
+
+    private void notifyReset() {
+        if (registry != null) {
+            registry.notifyChanged(this);
+        }
+    }
+}
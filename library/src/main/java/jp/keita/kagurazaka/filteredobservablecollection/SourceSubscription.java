@@ -0,0 +1,392 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.Observable;
+import android.databinding.ObservableList;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Subscription to a source {@link ObservableList} and to the property changes of its
+ * {@link Observable} elements.
+ * <p>
+ * Keeps an {@link ItemIndex} in sync with the source and forwards every change to a
+ * {@link Listener} with the source positions already resolved. A weak subscription is
+ * referenced only weakly by the source and its elements, as described in
+ * {@link WeakSubscriptions}.
+ * <p>
+ * A subscription which indexes a prefix observes only the elements in the head of the source
+ * which its owner has reached through {@link #resizePrefix(int)}. Changes of the source are
+ * still forwarded in full, and the owner ignores those beyond its prefix.
+ * <p>
+ * A subscription which keeps the elements tells its owner which elements a change removed or
+ * replaced through {@link #previousElement(int)}, since the source no longer has them when the
+ * change is forwarded.
+ *
+ * @param <T> the type of elements
+ */
+final class SourceSubscription<T> {
+    private final ObservableList<T> source;
+    private final Listener listener;
+    private final ItemIndex itemIndex;
+    private final Observable.OnPropertyChangedCallback itemChangedCallback;
+    private final ObservableList.OnListChangedCallback<ObservableList<T>> listChangedCallback;
+    private ObservableList.OnListChangedCallback<ObservableList<T>> registeredCallback;
+    private final boolean indexesPrefix;
+    private boolean isOpen;
+    private Object[] previousElements; // of the change being forwarded
+    private int previousStart;
+
+    SourceSubscription(final ObservableList<T> source, final Listener listener) {
+        this(source, listener, false);
+    }
+
+    SourceSubscription(final ObservableList<T> source, final Listener listener,
+                       boolean indexesPrefix) {
+        this(source, listener, indexesPrefix, false);
+    }
+
+    SourceSubscription(final ObservableList<T> source, final Listener listener,
+                       boolean indexesPrefix, boolean keepsElements) {
+        this.source = source;
+        this.listener = listener;
+        this.indexesPrefix = indexesPrefix;
+
+        // observe item property change events when the item is Observable
+        itemChangedCallback = new Observable.OnPropertyChangedCallback() {
+            @Override
+            public void onPropertyChanged(Observable observable, int i) {
+                itemIndex.forgetVerdict(observable);
+                for (int sourceIndex = itemIndex.indexOf(observable); sourceIndex >= 0;
+                     sourceIndex = itemIndex.nextIndexOf(observable, sourceIndex)) {
+                    listener.onItemPropertyChanged(sourceIndex, i);
+                }
+            }
+        };
+
+        // observe the source list change events
+        listChangedCallback = new ObservableList.OnListChangedCallback<ObservableList<T>>() {
+            @Override
+            public void onChanged(ObservableList<T> sender) {
+                SourceSubscription.this.onChanged();
+            }
+
+            @Override
+            public void onItemRangeChanged(ObservableList<T> sender, int positionStart, int itemCount) {
+                previousElements = replaceSlots(positionStart, itemCount);
+                previousStart = positionStart;
+                try {
+                    listener.onSourceRangeChanged(positionStart, itemCount);
+                } finally {
+                    previousElements = null;
+                }
+            }
+
+            @Override
+            public void onItemRangeInserted(ObservableList<T> sender, int positionStart, int itemCount) {
+                // register callback for receiving onPropertyChanged events of inserted elements
+                insertSlots(positionStart, itemCount);
+                listener.onSourceRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeMoved(ObservableList<T> sender, int fromPosition, int toPosition, int itemCount) {
+                // not move
+                if (fromPosition <= toPosition && toPosition <= fromPosition + itemCount) {
+                    return;
+                }
+                moveSlots(fromPosition, toPosition, itemCount);
+                listener.onSourceRangeMoved(fromPosition, toPosition, itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(ObservableList<T> sender, int positionStart, int itemCount) {
+                previousElements = removeSlots(positionStart, itemCount);
+                previousStart = positionStart;
+                try {
+                    listener.onSourceRangeRemoved(positionStart, itemCount);
+                } finally {
+                    previousElements = null;
+                }
+            }
+        };
+
+        itemIndex = new ItemIndex(itemChangedCallback, keepsElements);
+        registeredCallback = listChangedCallback;
+    }
+
+    ObservableList<T> getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the first source position of the specified element, or -1 if it is not in the
+     * source.
+     */
+    int indexOf(final Observable observable) {
+        return itemIndex.indexOf(observable);
+    }
+
+    /**
+     * Returns the next source position of the specified element after {@code sourceIndex}, or
+     * -1 if the element does not appear again.
+     */
+    int nextIndexOf(final Observable observable, int sourceIndex) {
+        return itemIndex.nextIndexOf(observable, sourceIndex);
+    }
+
+    /**
+     * Returns the element which was at the specified source position before the change being
+     * forwarded, which is available only in {@link Listener#onSourceRangeChanged(int, int)} and
+     * {@link Listener#onSourceRangeRemoved(int, int)} of a subscription keeping the elements.
+     */
+    @SuppressWarnings("unchecked")
+    T previousElement(int sourceIndex) {
+        return (T) previousElements[sourceIndex - previousStart];
+    }
+
+    /**
+     * Returns the memoized filter verdict of the specified element for the filter version, i.e.
+     * 1 if it passed, 0 if it did not, or -1 if there is none. A verdict is forgotten when a
+     * property of the element changes or the element leaves the source.
+     */
+    int getVerdict(final Observable observable, int version) {
+        return itemIndex.getVerdict(observable, version);
+    }
+
+    void putVerdict(final Observable observable, int version, boolean passed) {
+        itemIndex.putVerdict(observable, version, passed);
+    }
+
+    void clearVerdicts() {
+        itemIndex.clearVerdicts();
+    }
+
+    /**
+     * Starts observing the source and its elements.
+     */
+    void open() {
+        itemIndex.insert(0, source, indexesPrefix ? 0 : source.size());
+        source.addOnListChangedCallback(registeredCallback);
+        isOpen = true;
+    }
+
+    /**
+     * Stops observing the source and its elements.
+     */
+    void close() {
+        itemIndex.clear();
+        source.removeOnListChangedCallback(registeredCallback);
+        isOpen = false;
+    }
+
+    /**
+     * Sets whether the source and its elements reference this subscription only weakly. An open
+     * subscription is registered again with the new callbacks.
+     */
+    void setWeak(boolean weak) {
+        if (weak == (registeredCallback != listChangedCallback)) {
+            return;
+        }
+
+        boolean wasOpen = isOpen;
+        int prefixSize = itemIndex.size();
+        if (wasOpen) {
+            close();
+        }
+        // the source and its elements hold only the forwarders in the weak mode
+        if (weak) {
+            itemIndex.setCallback(new WeakPropertyChangedCallback(itemChangedCallback));
+            registeredCallback = new WeakListChangedCallback<>(listChangedCallback);
+        } else {
+            itemIndex.setCallback(itemChangedCallback);
+            registeredCallback = listChangedCallback;
+        }
+        if (wasOpen) {
+            open();
+            if (indexesPrefix) {
+                resizePrefix(prefixSize);
+            }
+        }
+    }
+
+    /**
+     * Indexes exactly the elements in the head of the source up to {@code prefixSize}, which the
+     * owner of a subscription indexing a prefix calls whenever its frontier moves.
+     */
+    void resizePrefix(int prefixSize) {
+        int oldSize = itemIndex.size();
+        if (prefixSize > oldSize) {
+            itemIndex.insert(oldSize, source, prefixSize - oldSize);
+        } else if (prefixSize < oldSize) {
+            itemIndex.remove(prefixSize, oldSize - prefixSize);
+        }
+    }
+
+    private Object[] replaceSlots(int positionStart, int itemCount) {
+        if (indexesPrefix) {
+            itemCount = Math.max(Math.min(itemCount, itemIndex.size() - positionStart), 0);
+        }
+        return itemIndex.replace(positionStart, source, itemCount);
+    }
+
+    private void insertSlots(int positionStart, int itemCount) {
+        // an insertion at the end of a prefix covering the whole source extends the prefix
+        if (indexesPrefix && positionStart >= itemIndex.size()
+                && (positionStart > itemIndex.size()
+                || itemIndex.size() != source.size() - itemCount)) {
+            return;
+        }
+        itemIndex.insert(positionStart, source, itemCount);
+    }
+
+    private void moveSlots(int fromPosition, int toPosition, int itemCount) {
+        if (!indexesPrefix) {
+            itemIndex.move(fromPosition, toPosition, itemCount);
+            return;
+        }
+
+        // the moved range may cross the end of the prefix
+        removeSlots(fromPosition, itemCount);
+        insertSlots(toPosition < fromPosition ? toPosition : toPosition - itemCount, itemCount);
+    }
+
+    private Object[] removeSlots(int positionStart, int itemCount) {
+        if (indexesPrefix) {
+            if (positionStart >= itemIndex.size()) {
+                return null;
+            }
+            itemCount = Math.min(itemCount, itemIndex.size() - positionStart);
+        }
+        return itemIndex.remove(positionStart, itemCount);
+    }
+
+    private void onChanged() {
+        if (indexesPrefix) {
+            // the owner indexes the head again as it re-evaluates the source
+            itemIndex.remove(0, itemIndex.size());
+            listener.onSourceChanged();
+            return;
+        }
+
+        // the source may have changed arbitrarily, so re-sync every slot
+        int oldSize = itemIndex.size();
+        int newSize = source.size();
+        if (newSize < oldSize) {
+            itemIndex.remove(newSize, oldSize - newSize);
+        }
+        itemIndex.replace(0, source, Math.min(oldSize, newSize));
+        if (newSize > oldSize) {
+            itemIndex.insert(oldSize, source, newSize - oldSize);
+        }
+        listener.onSourceChanged();
+    }
+
+    /**
+     * Receives the changes of the source with their source positions.
+     */
+    interface Listener {
+        void onSourceChanged();
+
+        void onSourceRangeChanged(int positionStart, int itemCount);
+
+        void onSourceRangeInserted(int positionStart, int itemCount);
+
+        /**
+         * Called when elements are moved, where {@code toPosition} is an index before the move.
+         * Moves that leave the source as it was are not forwarded.
+         */
+        void onSourceRangeMoved(int fromPosition, int toPosition, int itemCount);
+
+        void onSourceRangeRemoved(int positionStart, int itemCount);
+
+        void onItemPropertyChanged(int sourceIndex, int propertyId);
+    }
+
+    /**
+     * Forwards the changes of a source to a callback as long as the callback is reachable, and
+     * unsubscribes itself from the source after the callback has been collected.
+     */
+    private static final class WeakListChangedCallback<T>
+            extends ObservableList.OnListChangedCallback<ObservableList<T>> {
+        private final WeakReference<ObservableList.OnListChangedCallback<ObservableList<T>>> target;
+        private boolean isReclaimed;
+
+        WeakListChangedCallback(final ObservableList.OnListChangedCallback<ObservableList<T>> target) {
+            this.target = new WeakReference<>(target);
+        }
+
+        @Override
+        public void onChanged(ObservableList<T> sender) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = obtain(sender);
+            if (callback != null) {
+                callback.onChanged(sender);
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(ObservableList<T> sender, int positionStart, int itemCount) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = obtain(sender);
+            if (callback != null) {
+                callback.onItemRangeChanged(sender, positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(ObservableList<T> sender, int positionStart, int itemCount) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = obtain(sender);
+            if (callback != null) {
+                callback.onItemRangeInserted(sender, positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(ObservableList<T> sender, int fromPosition, int toPosition, int itemCount) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = obtain(sender);
+            if (callback != null) {
+                callback.onItemRangeMoved(sender, fromPosition, toPosition, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(ObservableList<T> sender, int positionStart, int itemCount) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = obtain(sender);
+            if (callback != null) {
+                callback.onItemRangeRemoved(sender, positionStart, itemCount);
+            }
+        }
+
+        private ObservableList.OnListChangedCallback<ObservableList<T>> obtain(
+                final ObservableList<T> sender) {
+            ObservableList.OnListChangedCallback<ObservableList<T>> callback = target.get();
+            if (callback == null && !isReclaimed) {
+                isReclaimed = true;
+                sender.removeOnListChangedCallback(this);
+                WeakSubscriptions.onReclaimed();
+            }
+            return callback;
+        }
+    }
+
+    /**
+     * Forwards the property changes of elements to a callback as long as the callback is
+     * reachable, and unsubscribes itself from each element after the callback has been collected.
+     */
+    private static final class WeakPropertyChangedCallback
+            extends Observable.OnPropertyChangedCallback {
+        private final WeakReference<Observable.OnPropertyChangedCallback> target;
+
+        WeakPropertyChangedCallback(final Observable.OnPropertyChangedCallback target) {
+            this.target = new WeakReference<>(target);
+        }
+
+        @Override
+        public void onPropertyChanged(Observable sender, int propertyId) {
+            Observable.OnPropertyChangedCallback callback = target.get();
+            if (callback == null) {
+                sender.removeOnPropertyChangedCallback(this);
+            } else {
+                callback.onPropertyChanged(sender, propertyId);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.Map;
+
+/**
+ * Real-time filtered {@link ObservableList} which switches between filters registered up front.
+ * <p>
+ * The membership of every registered filter is kept up to date as the source changes, so
+ * {@link #switchTo(String)} evaluates no filter. It only swaps the visible bucket and reports the
+ * difference between the two memberships as range removals and insertions.
+ *
+ * @param <T> the type of elements
+ */
+public class SwitchableFilteredReadOnlyObservableList<T> extends AbstractList<T>
+        implements ObservableList<T>, Closeable {
+    private final FilteredPartition<T> partition;
+    private final OnListChangedCallback<ObservableList<T>> bucketCallback;
+    private String activeName;
+    private ObservableList<T> active;
+    private transient ListChangeRegistry registry;
+
+    /**
+     * Creates a new {@code SwitchableFilteredReadOnlyObservableList} instance with the specified
+     * filters.
+     *
+     * @param source      an {@link ObservableList} to be filtered
+     * @param filters     filters by their names
+     * @param initialName the name of the filter which is active first
+     */
+    public SwitchableFilteredReadOnlyObservableList(final ObservableList<T> source,
+                                                    final Map<String, ? extends Filter<T>> filters,
+                                                    final String initialName) {
+        partition = new FilteredPartition<>(source, filters);
+
+        // forward the changes of the active bucket as the changes of this list
+        bucketCallback = new OnListChangedCallback<ObservableList<T>>() {
+            @Override
+            public void onChanged(ObservableList<T> sender) {
+                if (registry != null) {
+                    registry.notifyChanged(SwitchableFilteredReadOnlyObservableList.this);
+                }
+            }
+
+            @Override
+            public void onItemRangeChanged(ObservableList<T> sender, int positionStart, int itemCount) {
+                if (registry != null) {
+                    registry.notifyChanged(SwitchableFilteredReadOnlyObservableList.this,
+                            positionStart, itemCount);
+                }
+            }
+
+            @Override
+            public void onItemRangeInserted(ObservableList<T> sender, int positionStart, int itemCount) {
+                if (registry != null) {
+                    registry.notifyInserted(SwitchableFilteredReadOnlyObservableList.this,
+                            positionStart, itemCount);
+                }
+            }
+
+            @Override
+            public void onItemRangeMoved(ObservableList<T> sender, int fromPosition, int toPosition, int itemCount) {
+                if (registry != null) {
+                    registry.notifyMoved(SwitchableFilteredReadOnlyObservableList.this,
+                            fromPosition, toPosition, itemCount);
+                }
+            }
+
+            @Override
+            public void onItemRangeRemoved(ObservableList<T> sender, int positionStart, int itemCount) {
+                if (registry != null) {
+                    registry.notifyRemoved(SwitchableFilteredReadOnlyObservableList.this,
+                            positionStart, itemCount);
+                }
+            }
+        };
+
+        activeName = initialName;
+        active = partition.getBucket(initialName);
+        active.addOnListChangedCallback(bucketCallback);
+    }
+
+    @Override
+    public void close() {
+        active.removeOnListChangedCallback(bucketCallback);
+        partition.close();
+    }
+
+    /**
+     * Enables or disables the weak subscription described in {@link WeakSubscriptions}, which
+     * is disabled by default.
+     *
+     * @param enabled true to be referenced only weakly by the source and its elements
+     */
+    public void setWeakSubscriptionEnabled(boolean enabled) {
+        partition.setWeakSubscriptionEnabled(enabled);
+    }
+
+    /**
+     * Adds a callback to be notified when changes to the list occur.
+     *
+     * @param listener a callback to be added
+     */
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry == null) {
+            registry = new ListChangeRegistry();
+        }
+        registry.add(listener);
+    }
+
+    /**
+     * Removes a callback previously added.
+     *
+     * @param listener a callback to be removed
+     */
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback listener) {
+        if (registry != null) {
+            registry.remove(listener);
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        return active.get(index);
+    }
+
+    @Override
+    public int size() {
+        return active.size();
+    }
+
+    /**
+     * Returns the name of the active filter.
+     */
+    public String getActiveName() {
+        return activeName;
+    }
+
+    /**
+     * Makes the filter of the specified name active. No filter is evaluated.
+     *
+     * @param name the name of a filter registered at construction
+     */
+    public void switchTo(final String name) {
+        ObservableList<T> next = partition.getBucket(name);
+        if (next == active) {
+            return;
+        }
+
+        ChangeLog changes = new ChangeLog();
+        partition.diffBuckets(activeName, name, changes);
+        active.removeOnListChangedCallback(bucketCallback);
+        activeName = name;
+        active = next;
+        active.addOnListChangedCallback(bucketCallback);
+
+        if (registry != null) {
+            changes.dispatch(registry, this);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Statistics of the weak subscription, which each list of this library enables by its own
+ * {@code setWeakSubscriptionEnabled(boolean)}.
+ * <p>
+ * While the weak subscription of a list is enabled, the source
+ * {@link android.databinding.ObservableList} and its elements hold the list only weakly, so the
+ * list can be garbage collected without being closed. A collected list unsubscribes itself from
+ * the source the next time the source reports a change, and from each element the next time
+ * the element reports a property change. A list which is only referenced by its own callbacks
+ * is collected too, so keep a reference to every list in use.
+ */
+public final class WeakSubscriptions {
+    private static final AtomicInteger reclaimedCount = new AtomicInteger();
+
+    private WeakSubscriptions() {
+    }
+
+    /**
+     * Returns the number of collected lists which have been unsubscribed from their sources.
+     * <p>
+     * A list is counted once, when its source reports the first change after the collection.
+     * The callbacks left on its elements are removed later one by one and are not counted.
+     */
+    public static int getReclaimedCount() {
+        return reclaimedCount.get();
+    }
+
+    static void onReclaimed() {
+        reclaimedCount.incrementAndGet();
+    }
+}
@@ -0,0 +1,147 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ChunkedListTest {
+    private ChunkedList<Integer> list;
+    private List<Integer> expected;
+
+    @Before
+    public void setUp() {
+        list = new ChunkedList<>();
+        expected = new ArrayList<>();
+    }
+
+    @Test
+    public void addAndGet() {
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE * 3; ++i) {
+            list.add(i);
+            expected.add(i);
+        }
+        list.add(1, -1);
+        expected.add(1, -1);
+
+        assertThat(list.size(), is(expected.size()));
+        assertThat(list.get(1), is(-1));
+        assertThat(list.get(list.size() - 1), is(ChunkedList.MAX_CHUNK_SIZE * 3 - 1));
+        assertThat((List<Integer>) list, is(expected));
+    }
+
+    @Test
+    public void removeMergesChunks() {
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE * 2; ++i) {
+            list.add(0, i);
+            expected.add(0, i);
+        }
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE * 2 - 1; ++i) {
+            list.remove(i % list.size());
+            expected.remove(i % expected.size());
+        }
+
+        assertThat((List<Integer>) list, is(expected));
+
+        list.remove(0);
+
+        assertThat(list.isEmpty(), is(true));
+        list.add(0, 42);
+        assertThat(list.get(0), is(42));
+    }
+
+    @Test
+    public void removeRangeAcrossChunks() {
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE * 4; ++i) {
+            list.add(0, i);
+            expected.add(0, i);
+        }
+        list.subList(10, ChunkedList.MAX_CHUNK_SIZE * 3).clear();
+        expected.subList(10, ChunkedList.MAX_CHUNK_SIZE * 3).clear();
+
+        assertThat((List<Integer>) list, is(expected));
+
+        list.subList(0, list.size()).clear();
+
+        assertThat(list.isEmpty(), is(true));
+        list.add(0, 42);
+        assertThat(list.get(0), is(42));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRange() {
+        list.add(0);
+        list.get(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void addOutOfRange() {
+        list.add(1, 0);
+    }
+
+    @Test
+    public void randomOperations() {
+        new RandomOperations()
+                .add(3, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        int index = random.nextInt(expected.size() + 1);
+                        int value = random.nextInt();
+                        list.add(index, value);
+                        expected.add(index, value);
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (!expected.isEmpty()) {
+                            int index = random.nextInt(expected.size());
+                            int value = random.nextInt();
+                            list.set(index, value);
+                            expected.set(index, value);
+                        }
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (!expected.isEmpty()) {
+                            int index = random.nextInt(expected.size());
+                            assertThat(list.remove(index), is(expected.remove(index)));
+                        }
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        // shrinks the list back over chunk boundaries
+                        int size = expected.size();
+                        if (size > ChunkedList.MAX_CHUNK_SIZE * 2) {
+                            int from = random.nextInt(size);
+                            int to = from + random.nextInt(
+                                    Math.min(ChunkedList.MAX_CHUNK_SIZE, size - from) + 1);
+                            list.subList(from, to).clear();
+                            expected.subList(from, to).clear();
+                        }
+                    }
+                })
+                .run(20000, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertThat(list.size(), is(expected.size()));
+                        if (!expected.isEmpty()) {
+                            int index = expected.size() / 2;
+                            assertThat(list.get(index), is(expected.get(index)));
+                        }
+                    }
+                });
+        assertThat((List<Integer>) list, is(expected));
+    }
+}
@@ -0,0 +1,129 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FacetCountsTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private FacetCounts<ObservableItem, String> facets;
+    private FacetCounts.OnCountsChangedCallback<String> callback;
+
+    // "2,a" has the keys "parity:even" and "tag:a"
+    private final FacetCounts.Extractor<ObservableItem, String> extractor
+            = new FacetCounts.Extractor<ObservableItem, String>() {
+        @Override
+        public Collection<String> extract(ObservableItem element) {
+            String[] parts = element.getValue().split(",");
+            String parity = Integer.parseInt(parts[0]) % 2 == 0 ? "parity:even" : "parity:odd";
+            return parts.length > 1 ? Arrays.asList(parity, "tag:" + parts[1])
+                    : Arrays.asList(parity);
+        }
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        source.addAll(Arrays.asList(new ObservableItem("0,a"), new ObservableItem("1,a"),
+                new ObservableItem("2"), new ObservableItem("3,b")));
+        facets = new FacetCounts<>(source, extractor);
+        callback = Mockito.mock(FacetCounts.OnCountsChangedCallback.class);
+        facets.addOnCountsChangedCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        facets.close();
+    }
+
+    @Test
+    public void initialCounts() {
+        assertThat(facets.getCount("parity:even"), is(2));
+        assertThat(facets.getCount("parity:odd"), is(2));
+        assertThat(facets.getCount("tag:a"), is(2));
+        assertThat(facets.getCount("tag:b"), is(1));
+        assertThat(facets.getCount("tag:c"), is(0));
+    }
+
+    @Test
+    public void changedKeysAreReportedTogether() {
+        source.addAll(Arrays.asList(new ObservableItem("4,c"), new ObservableItem("6,c")));
+
+        assertThat(facets.getCount("tag:c"), is(2));
+        verify(callback).onCountsChanged(facets, set("parity:even", "tag:c"));
+    }
+
+    @Test
+    public void propertyChange() {
+        source.get(0).setValue("1,b");
+
+        assertThat(facets.getCount("tag:a"), is(1));
+        verify(callback).onCountsChanged(facets, set("parity:even", "parity:odd", "tag:a", "tag:b"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unchangedCountsAreNotReported() {
+        source.set(0, new ObservableItem("2,a"));
+        source.move(0, 4, 2);
+
+        verify(callback, never()).onCountsChanged(any(FacetCounts.class), any(Set.class));
+    }
+
+    @Test
+    public void removeDropsEmptyKeys() {
+        source.remove(3);
+
+        assertThat(facets.getKeys(), is(set("parity:even", "parity:odd", "tag:a")));
+        verify(callback).onCountsChanged(facets, set("parity:odd", "tag:b"));
+    }
+
+    @Test
+    public void randomOperations() {
+        RandomOperations.onSource(source, new RandomOperations.Values() {
+            @Override
+            public String next(Random random) {
+                int tag = random.nextInt(4);
+                return random.nextInt(10) + (tag < 3 ? "," + (char) ('a' + tag) : "");
+            }
+        }).run(2000, new Runnable() {
+            @Override
+            public void run() {
+                Map<String, Integer> expected = new HashMap<>();
+                for (final ObservableItem item : source) {
+                    for (final String key : extractor.extract(item)) {
+                        expected.put(key, expected.containsKey(key) ? expected.get(key) + 1 : 1);
+                    }
+                }
+                assertThat(facets.getKeys(), is(expected.keySet()));
+                for (final Map.Entry<String, Integer> entry : expected.entrySet()) {
+                    assertThat(facets.getCount(entry.getKey()), is(entry.getValue()));
+                }
+            }
+        });
+    }
+
+    private static Set<String> set(final String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+}
@@ -0,0 +1,157 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.Observable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class FilteredCountTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private FilteredCount<ObservableItem> count;
+    private Observable.OnPropertyChangedCallback callback;
+
+    private final Filter<ObservableItem> evenFilter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 6; ++i) {
+            source.add(new ObservableItem(String.valueOf(i)));
+        }
+        count = new FilteredCount<>(source, evenFilter);
+        callback = Mockito.mock(Observable.OnPropertyChangedCallback.class);
+        count.addOnPropertyChangedCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        count.close();
+    }
+
+    @Test
+    public void initialCount() {
+        assertThat(count.get(), is(3));
+    }
+
+    @Test
+    public void insertAndRemove() {
+        source.addAll(Arrays.asList(new ObservableItem("6"), new ObservableItem("7")));
+
+        assertThat(count.get(), is(4));
+        verify(callback).onPropertyChanged(count, 0);
+
+        source.removeRange(0, 2);
+
+        assertThat(count.get(), is(3));
+        verify(callback, times(2)).onPropertyChanged(count, 0);
+    }
+
+    @Test
+    public void notifiesOnlyWhenCountChanges() {
+        source.add(new ObservableItem("7"));
+        source.move(0, 7, 2);
+        source.set(0, new ObservableItem("4"));
+        source.get(2).setValue("10");
+
+        assertThat(count.get(), is(3));
+        verify(callback, never()).onPropertyChanged((Observable) any(), anyInt());
+    }
+
+    @Test
+    public void propertyChange() {
+        source.get(1).setValue("8");
+
+        assertThat(count.get(), is(4));
+        verify(callback).onPropertyChanged(count, 0);
+    }
+
+    @Test
+    public void reset() {
+        source.notifyFakeChange(new Runnable() {
+            @Override
+            public void run() {
+                source.add(new ObservableItem("6"));
+                source.remove(0);
+                source.remove(0);
+            }
+        });
+
+        assertThat(count.get(), is(3));
+        verify(callback, never()).onPropertyChanged((Observable) any(), anyInt());
+
+        source.notifyFakeChange(new Runnable() {
+            @Override
+            public void run() {
+                source.add(new ObservableItem("8"));
+            }
+        });
+
+        assertThat(count.get(), is(4));
+        verify(callback).onPropertyChanged(count, 0);
+    }
+
+    @Test
+    public void setFilter() {
+        count.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return Integer.parseInt(element.getValue()) < 5;
+            }
+        });
+
+        assertThat(count.get(), is(5));
+        verify(callback).onPropertyChanged(count, 0);
+    }
+
+    @Test
+    public void closeStopsCounting() {
+        count.close();
+
+        source.add(new ObservableItem("6"));
+
+        assertThat(count.get(), is(3));
+    }
+
+    @Test
+    public void randomOperations() {
+        RandomOperations.onSource(source, new RandomOperations.Values() {
+            @Override
+            public String next(Random random) {
+                return String.valueOf(random.nextInt(100));
+            }
+        }).run(2000, new Runnable() {
+            @Override
+            public void run() {
+                int expected = 0;
+                for (final ObservableItem item : source) {
+                    if (evenFilter.execute(item)) {
+                        expected++;
+                    }
+                }
+                assertThat(count.get(), is(expected));
+            }
+        });
+    }
+}
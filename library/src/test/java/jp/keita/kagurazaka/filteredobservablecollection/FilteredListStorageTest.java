@@ -0,0 +1,358 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.QueueExecutor;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the same tests against {@link FilteredReadOnlyObservableList} and
+ * {@link ChunkedFilteredReadOnlyObservableList}, which share the filtering and differ only in
+ * how they store the filtered elements.
+ */
+@RunWith(Parameterized.class)
+public class FilteredListStorageTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> storages() {
+        return Arrays.asList(new Object[][]{
+                {"array", new Storage() {
+                    @Override
+                    Subject create(ObservableList<ObservableItem> source,
+                                   Filter<ObservableItem> filter) {
+                        final FilteredReadOnlyObservableList<ObservableItem> filtered
+                                = new FilteredReadOnlyObservableList<>(source, filter);
+                        return new Subject(filtered) {
+                            @Override
+                            void setFilter(Filter<ObservableItem> filter) {
+                                filtered.setFilter(filter);
+                            }
+
+                            @Override
+                            void setFilterAsync(Filter<ObservableItem> filter,
+                                                QueueExecutor background, QueueExecutor main) {
+                                filtered.setFilterAsync(filter, background, main);
+                            }
+
+                            @Override
+                            FilteredReadOnlyObservableList.Batch beginBatch() {
+                                return filtered.beginBatch();
+                            }
+
+                            @Override
+                            void setLazySubscriptionEnabled(boolean enabled) {
+                                filtered.setLazySubscriptionEnabled(enabled);
+                            }
+
+                            @Override
+                            void close() {
+                                filtered.close();
+                            }
+                        };
+                    }
+                }},
+                {"chunked", new Storage() {
+                    @Override
+                    Subject create(ObservableList<ObservableItem> source,
+                                   Filter<ObservableItem> filter) {
+                        final ChunkedFilteredReadOnlyObservableList<ObservableItem> filtered
+                                = new ChunkedFilteredReadOnlyObservableList<>(source, filter);
+                        return new Subject(filtered) {
+                            @Override
+                            void setFilter(Filter<ObservableItem> filter) {
+                                filtered.setFilter(filter);
+                            }
+
+                            @Override
+                            void setFilterAsync(Filter<ObservableItem> filter,
+                                                QueueExecutor background, QueueExecutor main) {
+                                filtered.setFilterAsync(filter, background, main);
+                            }
+
+                            @Override
+                            FilteredReadOnlyObservableList.Batch beginBatch() {
+                                return filtered.beginBatch();
+                            }
+
+                            @Override
+                            void setLazySubscriptionEnabled(boolean enabled) {
+                                filtered.setLazySubscriptionEnabled(enabled);
+                            }
+
+                            @Override
+                            void close() {
+                                filtered.close();
+                            }
+                        };
+                    }
+                }},
+        });
+    }
+
+    private final Storage storage;
+    private ObservableArrayListMod<ObservableItem> source;
+    private Subject subject;
+    private ObservableList<ObservableItem> list;
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+    private int nextValue;
+
+    private final Filter<ObservableItem> evenFilter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    public FilteredListStorageTest(String name, Storage storage) {
+        this.storage = storage;
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 6; ++i) {
+            source.add(newItem());
+        }
+        subject = storage.create(source, evenFilter);
+        list = subject.list;
+        callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        list.addOnListChangedCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        subject.close();
+    }
+
+    @Test
+    public void initialElements() {
+        assertThat(values(), is(Arrays.asList("0", "2", "4")));
+        assertThat(list.get(1), is(source.get(2)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRange() {
+        list.get(3);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isImmutable() {
+        list.add(new ObservableItem("8"));
+    }
+
+    @Test
+    public void insertAndRemove() {
+        source.addAll(1, Arrays.asList(new ObservableItem("6"), new ObservableItem("7"),
+                new ObservableItem("8")));
+
+        assertThat(values(), is(Arrays.asList("0", "6", "8", "2", "4")));
+        verify(callback).onItemRangeInserted(list, 1, 2);
+
+        source.removeRange(0, 3);
+
+        assertThat(values(), is(Arrays.asList("8", "2", "4")));
+        verify(callback).onItemRangeRemoved(list, 0, 2);
+    }
+
+    @Test
+    public void insertNearTopOfLongList() {
+        List<ObservableItem> items = new ArrayList<>();
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE * 4; ++i) {
+            items.add(newItem());
+        }
+        source.addAll(items);
+        for (int i = 0; i < ChunkedList.MAX_CHUNK_SIZE; ++i) {
+            source.add(1, new ObservableItem(String.valueOf(i * 2)));
+        }
+        source.removeRange(1, ChunkedList.MAX_CHUNK_SIZE / 2);
+
+        assertThat(list, is(expected()));
+    }
+
+    @Test
+    public void propertyChange() {
+        source.get(1).setValue("8");
+
+        assertThat(values(), is(Arrays.asList("0", "8", "2", "4")));
+        verify(callback).onItemRangeInserted(list, 1, 1);
+
+        source.get(2).setValue("3");
+
+        assertThat(values(), is(Arrays.asList("0", "8", "4")));
+        verify(callback).onItemRangeRemoved(list, 2, 1);
+    }
+
+    @Test
+    public void move() {
+        source.move(0, 6, 2);
+
+        assertThat(values(), is(Arrays.asList("2", "4", "0")));
+        verify(callback).onItemRangeMoved(list, 0, 3, 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void setFilter() {
+        ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+
+        subject.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return Integer.parseInt(element.getValue()) < 3;
+            }
+        });
+
+        assertThat(values(), is(Arrays.asList("0", "1", "2")));
+        mirror.assertConsistentWith(list);
+        verify(callback, never()).onChanged((ObservableList) any());
+    }
+
+    @Test
+    @SuppressWarnings("try") // the batch is only closed
+    public void batchMergesNotifications() {
+        try (FilteredReadOnlyObservableList.Batch batch = subject.beginBatch()) {
+            source.add(new ObservableItem("6"));
+            source.add(new ObservableItem("8"));
+
+            verify(callback, never()).onItemRangeInserted(list, 3, 1);
+        }
+
+        assertThat(values(), is(Arrays.asList("0", "2", "4", "6", "8")));
+        verify(callback).onItemRangeInserted(list, 3, 2);
+    }
+
+    @Test
+    public void setFilterAsync() {
+        QueueExecutor background = new QueueExecutor();
+        QueueExecutor main = new QueueExecutor();
+
+        subject.setFilterAsync(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return Integer.parseInt(element.getValue()) % 2 == 1;
+            }
+        }, background, main);
+        background.runAll();
+
+        assertThat(values(), is(Arrays.asList("0", "2", "4")));
+
+        main.runAll();
+
+        assertThat(values(), is(Arrays.asList("1", "3", "5")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazySubscription() {
+        subject.setLazySubscriptionEnabled(true);
+        list.removeOnListChangedCallback(callback);
+
+        source.add(new ObservableItem("6"));
+
+        assertThat(values(), is(Arrays.asList("0", "2", "4")));
+
+        list.addOnListChangedCallback(callback);
+
+        assertThat(values(), is(Arrays.asList("0", "2", "4", "6")));
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closeStopsFiltering() {
+        subject.close();
+
+        source.add(newItem());
+
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void randomOperations() {
+        final ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+
+        RandomOperations.onSource(source, RandomOperations.sequence()).run(2000, new Runnable() {
+            @Override
+            public void run() {
+                assertThat(list, is(expected()));
+                mirror.assertConsistentWith(list);
+            }
+        });
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private List<ObservableItem> expected() {
+        List<ObservableItem> expected = new ArrayList<>();
+        for (final ObservableItem item : source) {
+            if (evenFilter.execute(item)) {
+                expected.add(item);
+            }
+        }
+        return expected;
+    }
+
+    private List<String> values() {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : list) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Creates a filtered list backed by one of the storages.
+     */
+    abstract static class Storage {
+        abstract Subject create(ObservableList<ObservableItem> source,
+                                Filter<ObservableItem> filter);
+    }
+
+    /**
+     * Filtered list under test and its methods which are not declared by {@link ObservableList}.
+     */
+    abstract static class Subject {
+        final ObservableList<ObservableItem> list;
+
+        Subject(ObservableList<ObservableItem> list) {
+            this.list = list;
+        }
+
+        abstract void setFilter(Filter<ObservableItem> filter);
+
+        abstract void setFilterAsync(Filter<ObservableItem> filter, QueueExecutor background,
+                                     QueueExecutor main);
+
+        abstract FilteredReadOnlyObservableList.Batch beginBatch();
+
+        abstract void setLazySubscriptionEnabled(boolean enabled);
+
+        abstract void close();
+    }
+}
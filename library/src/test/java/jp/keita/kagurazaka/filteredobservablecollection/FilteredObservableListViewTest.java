@@ -0,0 +1,166 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FilteredObservableListViewTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private FilteredObservableListView<ObservableItem> view;
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+    private int nextValue;
+
+    private final Filter<ObservableItem> evenFilter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 6; ++i) {
+            source.add(newItem());
+        }
+        view = new FilteredObservableListView<>(source, evenFilter);
+        callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        view.addOnListChangedCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        view.close();
+    }
+
+    @Test
+    public void initialElements() {
+        assertThat(values(), is(Arrays.asList("0", "2", "4")));
+        assertThat(view.get(1), is(source.get(2)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRange() {
+        view.get(3);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isImmutable() {
+        view.add(new ObservableItem("8"));
+    }
+
+    @Test
+    public void insertAndRemove() {
+        source.addAll(1, Arrays.asList(new ObservableItem("6"), new ObservableItem("7"),
+                new ObservableItem("8")));
+
+        assertThat(values(), is(Arrays.asList("0", "6", "8", "2", "4")));
+        verify(callback).onItemRangeInserted(view, 1, 2);
+
+        source.removeRange(0, 3);
+
+        assertThat(values(), is(Arrays.asList("8", "2", "4")));
+        verify(callback).onItemRangeRemoved(view, 0, 2);
+    }
+
+    @Test
+    public void propertyChange() {
+        source.get(1).setValue("8");
+
+        assertThat(values(), is(Arrays.asList("0", "8", "2", "4")));
+        verify(callback).onItemRangeInserted(view, 1, 1);
+
+        source.get(2).setValue("3");
+
+        assertThat(values(), is(Arrays.asList("0", "8", "4")));
+        verify(callback).onItemRangeRemoved(view, 2, 1);
+    }
+
+    @Test
+    public void move() {
+        source.move(0, 6, 2);
+
+        assertThat(values(), is(Arrays.asList("2", "4", "0")));
+        verify(callback).onItemRangeMoved(view, 0, 3, 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void setFilter() {
+        ListMirror<ObservableItem> mirror = new ListMirror<>(view);
+        view.addOnListChangedCallback(mirror);
+
+        view.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return Integer.parseInt(element.getValue()) < 3;
+            }
+        });
+
+        assertThat(values(), is(Arrays.asList("0", "1", "2")));
+        mirror.assertConsistentWith(view);
+        verify(callback, never()).onChanged((ObservableList) any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closeStopsFiltering() {
+        view.close();
+
+        source.add(newItem());
+
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void randomOperations() {
+        final ListMirror<ObservableItem> mirror = new ListMirror<>(view);
+        view.addOnListChangedCallback(mirror);
+
+        RandomOperations.onSource(source, RandomOperations.sequence()).run(2000, new Runnable() {
+            @Override
+            public void run() {
+                List<ObservableItem> expected = new ArrayList<>();
+                for (final ObservableItem item : source) {
+                    if (evenFilter.execute(item)) {
+                        expected.add(item);
+                    }
+                }
+                assertThat(view, is(expected));
+                mirror.assertConsistentWith(view);
+            }
+        });
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private List<String> values() {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : view) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+}
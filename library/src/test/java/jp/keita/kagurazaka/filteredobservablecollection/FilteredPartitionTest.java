@@ -0,0 +1,213 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FilteredPartitionTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private FilteredPartition<ObservableItem> partition;
+    private int evaluationCount;
+    private int nextValue;
+
+    private final Filter<ObservableItem> all = new PropertyAwareFilter<ObservableItem>() {
+        @Override
+        public int[] getDependentPropertyIds() {
+            return new int[0];
+        }
+
+        @Override
+        public boolean execute(ObservableItem element) {
+            evaluationCount++;
+            return true;
+        }
+    };
+
+    private final Filter<ObservableItem> even = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            evaluationCount++;
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    private final Filter<ObservableItem> odd = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            evaluationCount++;
+            return Integer.parseInt(element.getValue()) % 2 != 0;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 6; ++i) {
+            source.add(newItem());
+        }
+        Map<String, Filter<ObservableItem>> filters = new LinkedHashMap<>();
+        filters.put("all", all);
+        filters.put("even", even);
+        filters.put("odd", odd);
+        partition = new FilteredPartition<>(source, filters);
+    }
+
+    @After
+    public void tearDown() {
+        partition.close();
+    }
+
+    @Test
+    public void initialBuckets() {
+        assertThat(values("all"), is(Arrays.asList("0", "1", "2", "3", "4", "5")));
+        assertThat(values("even"), is(Arrays.asList("0", "2", "4")));
+        assertThat(values("odd"), is(Arrays.asList("1", "3", "5")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void insertEvaluatesEachFilterOnce() {
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> even = mockCallback("even");
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> odd = mockCallback("odd");
+        evaluationCount = 0;
+
+        source.add(1, new ObservableItem("10"));
+
+        assertThat(evaluationCount, is(3));
+        verify(even).onItemRangeInserted(partition.getBucket("even"), 1, 1);
+        verify(odd, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void propertyChangeMovesItemBetweenBuckets() {
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> all = mockCallback("all");
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> even = mockCallback("even");
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> odd = mockCallback("odd");
+        evaluationCount = 0;
+
+        source.get(2).setValue("7");
+
+        // the filter of "all" depends on no property
+        assertThat(evaluationCount, is(2));
+        verify(all).onItemRangeChanged(partition.getBucket("all"), 2, 1);
+        verify(even).onItemRangeRemoved(partition.getBucket("even"), 1, 1);
+        verify(odd).onItemRangeInserted(partition.getBucket("odd"), 1, 1);
+        assertThat(values("odd"), is(Arrays.asList("1", "7", "3", "5")));
+    }
+
+    @Test
+    public void removeAndMove() {
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> even = mockCallback("even");
+
+        source.move(0, 6, 2);
+
+        verify(even).onItemRangeMoved(partition.getBucket("even"), 0, 3, 1);
+        assertThat(values("even"), is(Arrays.asList("2", "4", "0")));
+
+        source.removeRange(0, 3);
+
+        verify(even).onItemRangeRemoved(partition.getBucket("even"), 0, 2);
+        assertThat(values("even"), is(Arrays.asList("0")));
+    }
+
+    @Test
+    public void setFilter() {
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> even = mockCallback("even");
+
+        partition.setFilter("even", new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return Integer.parseInt(element.getValue()) < 3;
+            }
+        });
+
+        verify(even).onItemRangeInserted(partition.getBucket("even"), 1, 1);
+        verify(even).onItemRangeRemoved(partition.getBucket("even"), 3, 1);
+        assertThat(values("even"), is(Arrays.asList("0", "1", "2")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void bucketIsImmutable() {
+        partition.getBucket("all").add(newItem());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBucket() {
+        partition.getBucket("unknown");
+    }
+
+    @Test
+    public void randomOperations() {
+        final Map<String, ListMirror<ObservableItem>> mirrors = new LinkedHashMap<>();
+        for (final String name : Arrays.asList("all", "even", "odd")) {
+            ListMirror<ObservableItem> mirror = new ListMirror<>(partition.getBucket(name));
+            partition.getBucket(name).addOnListChangedCallback(mirror);
+            mirrors.put(name, mirror);
+        }
+
+        RandomOperations.onSource(source, RandomOperations.sequence()).run(2000, new Runnable() {
+            @Override
+            public void run() {
+                assertThat(partition.getBucket("all"), is((List<ObservableItem>) source));
+                assertThat(partition.getBucket("even"), is(expected(even)));
+                assertThat(partition.getBucket("odd"), is(expected(odd)));
+                for (final Map.Entry<String, ListMirror<ObservableItem>> entry
+                        : mirrors.entrySet()) {
+                    entry.getValue().assertConsistentWith(partition.getBucket(entry.getKey()));
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> mockCallback(
+            final String name) {
+        ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback
+                = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        partition.getBucket(name).addOnListChangedCallback(callback);
+        return callback;
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private List<String> values(final String name) {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : partition.getBucket(name)) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+
+    private List<ObservableItem> expected(final Filter<ObservableItem> filter) {
+        List<ObservableItem> expected = new ArrayList<>();
+        for (final ObservableItem item : source) {
+            if (filter.execute(item)) {
+                expected.add(item);
+            }
+        }
+        return expected;
+    }
+}
@@ -7,17 +7,28 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
 
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
 import jp.keita.kagurazaka.filteredobservablecollection.util.NonObservableItemListSource;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
 import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
 import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItemListSource;
+import jp.keita.kagurazaka.filteredobservablecollection.util.QueueExecutor;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -560,8 +571,7 @@ public class FilteredReadOnlyObservableListTest {
 
             rule.getSource().move(0, 5, 2);
 
-            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 2);
-            verify(rule.getCallback()).onItemRangeInserted(list, 3, 2);
+            verify(rule.getCallback()).onItemRangeMoved(list, 0, 5, 2);
             assertThat(list.get(0), is("element3"));
             assertThat(list.get(3), is("element1"));
         }
@@ -574,8 +584,7 @@ public class FilteredReadOnlyObservableListTest {
 
             rule.getSource().move(3, 1, 2);
 
-            verify(rule.getCallback()).onItemRangeRemoved(list, 3, 2);
-            verify(rule.getCallback()).onItemRangeInserted(list, 1, 2);
+            verify(rule.getCallback()).onItemRangeMoved(list, 3, 1, 2);
             assertThat(list.get(1), is("element4"));
             assertThat(list.get(3), is("element2"));
         }
@@ -590,9 +599,7 @@ public class FilteredReadOnlyObservableListTest {
             rule.getSource().move(1, 2, 3);
 
             verify(rule.getCallback(), never())
-                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
-            verify(rule.getCallback(), never())
-                    .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+                    .onItemRangeMoved((ObservableList) any(), anyInt(), anyInt(), anyInt());
             assertThat(list.get(1), is("element2"));
         }
 
@@ -609,8 +616,7 @@ public class FilteredReadOnlyObservableListTest {
 
             rule.getSource().move(0, 5, 4);
 
-            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 2);
-            verify(rule.getCallback()).onItemRangeInserted(list, 1, 2);
+            verify(rule.getCallback()).onItemRangeMoved(list, 0, 3, 2);
             assertThat(list.get(0), is("element5"));
             assertThat(list.get(1), is("element1"));
             assertThat(list.get(2), is("element3"));
@@ -631,9 +637,7 @@ public class FilteredReadOnlyObservableListTest {
             rule.getSource().move(1, 0, 2);
 
             verify(rule.getCallback(), never())
-                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
-            verify(rule.getCallback(), never())
-                    .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+                    .onItemRangeMoved((ObservableList) any(), anyInt(), anyInt(), anyInt());
             assertThat(list.get(0), is("element1"));
             assertThat(list.get(1), is("element4"));
         }
@@ -662,11 +666,197 @@ public class FilteredReadOnlyObservableListTest {
                 }
             });
 
-            verify(rule.getCallback()).onChanged(list);
+            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 1);
+            verify(rule.getCallback()).onItemRangeInserted(list, 0, 1);
+            verify(rule.getCallback()).onItemRangeRemoved(list, 1, 1);
+            verify(rule.getCallback(), never()).onChanged(list);
+            assertThat(list.size(), is(3));
             assertThat(list.get(0), is("element2"));
             assertThat(list.get(1), is("element4"));
             assertThat(list.get(2), is("element5"));
         }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void resetSameFilter() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+
+            list.setFilter(filter);
+
+            verify(rule.getCallback(), never()).onChanged(list);
+            verify(rule.getCallback(), never())
+                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
+            verify(rule.getCallback(), never())
+                    .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+            assertThat(list.size(), is(4));
+        }
+
+        @Test
+        public void changeAllWithDifferentSize() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+
+            rule.getSource().notifyFakeChange(new Runnable() {
+                @Override
+                public void run() {
+                    rule.getSource().add("add1");
+                    rule.getSource().add("add2");
+                }
+            });
+
+            verify(rule.getCallback()).onChanged(list);
+            assertThat(list.size(), is(5));
+            assertThat(list.get(4), is("add1"));
+        }
+
+        @Test
+        public void refineFilter() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+
+            final List<String> evaluated = new ArrayList<>();
+            list.refineFilter(new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    evaluated.add(element);
+                    return !element.contains("2") && !element.contains("4")
+                            && !element.contains("5");
+                }
+            });
+
+            verify(rule.getCallback()).onItemRangeRemoved(list, 2, 2);
+            assertThat(evaluated, is(Arrays.asList("element1", "element3", "element4", "element5")));
+            assertThat(list.size(), is(2));
+            assertThat(list.get(1), is("element3"));
+        }
+
+        @Test
+        public void relaxFilter() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    return element.contains("1") || element.contains("5");
+                }
+            });
+            rule.setUpList(list);
+
+            final List<String> evaluated = new ArrayList<>();
+            list.relaxFilter(new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    evaluated.add(element);
+                    return !element.contains("3");
+                }
+            });
+
+            verify(rule.getCallback()).onItemRangeInserted(list, 1, 2);
+            assertThat(evaluated, is(Arrays.asList("element2", "element3", "element4")));
+            assertThat(list.size(), is(4));
+            assertThat(list.get(1), is("element2"));
+            assertThat(list.get(2), is("element4"));
+        }
+    }
+
+    public static class Batch {
+        @Rule
+        public NonObservableItemListSource rule = new NonObservableItemListSource();
+
+        @Test
+        @SuppressWarnings({"unchecked", "try"}) // the batch is only closed
+        public void coalesceNotifications() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            try (FilteredReadOnlyObservableList.Batch batch = list.beginBatch()) {
+                rule.getSource().add("add1");
+                rule.getSource().add("add2");
+                rule.getSource().set(5, "add1-2");
+
+                verify(rule.getCallback(), never())
+                        .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+            }
+
+            verify(rule.getCallback()).onItemRangeInserted(list, 5, 2);
+            verify(rule.getCallback(), never())
+                    .onItemRangeChanged((ObservableList) any(), anyInt(), anyInt());
+            assertThat(list.get(5), is("add1-2"));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void cancelInsertionThenRemoval() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.beginBatch();
+            rule.getSource().add(1, "add1");
+            rule.getSource().remove(1);
+            list.endBatch();
+
+            verify(rule.getCallback(), never())
+                    .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+            verify(rule.getCallback(), never())
+                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
+            verify(rule.getCallback(), never()).onChanged(list);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void nestedBatch() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.beginBatch();
+            list.beginBatch();
+            rule.getSource().remove(0);
+            list.endBatch();
+
+            verify(rule.getCallback(), never())
+                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
+
+            rule.getSource().remove(0);
+            list.endBatch();
+
+            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 2);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void fallBackToChanged() {
+            for (int i = 0; i < 40; ++i) {
+                rule.getSource().add("add" + i);
+            }
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.beginBatch();
+            for (int i = 0; i < rule.getSource().size(); i += 2) {
+                rule.getSource().set(i, "changed" + i);
+            }
+            list.endBatch();
+
+            verify(rule.getCallback()).onChanged(list);
+            verify(rule.getCallback(), never())
+                    .onItemRangeChanged((ObservableList) any(), anyInt(), anyInt());
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void endWithoutBegin() {
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.endBatch();
+        }
     }
 
     public static class ObservableItemList {
@@ -760,6 +950,855 @@ public class FilteredReadOnlyObservableListTest {
             verify(rule.getCallback(), never())
                     .onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
         }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void moveKeepsSubscriptions() {
+            final List<ObservableItem> evaluated = new ArrayList<>();
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(),
+                    new Filter<ObservableItem>() {
+                        @Override
+                        public boolean execute(ObservableItem element) {
+                            evaluated.add(element);
+                            return !element.getValue().contains("2");
+                        }
+                    });
+            rule.setUpList(list);
+            evaluated.clear();
+
+            rule.getSource().move(0, 4, 2);
+            ObservableItem moved = rule.getSource().get(3);
+            moved.setValue("element-two");
+
+            verify(rule.getCallback()).onItemRangeMoved(list, 0, 3, 1);
+            verify(rule.getCallback(), never())
+                    .onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
+            verify(rule.getCallback()).onItemRangeInserted(list, 3, 1);
+            assertThat(evaluated, is(Collections.singletonList(moved)));
+            assertThat(moved.callbackCount(), is(1));
+            assertThat(list.get(2).getValue(), is("element1"));
+        }
+
+        @Test
+        public void updateIrrelevantProperty() {
+            final List<ObservableItem> evaluated = new ArrayList<>();
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(),
+                    new PropertyAwareFilter<ObservableItem>() {
+                        @Override
+                        public int[] getDependentPropertyIds() {
+                            return new int[]{1};
+                        }
+
+                        @Override
+                        public boolean execute(ObservableItem element) {
+                            evaluated.add(element);
+                            return !element.getValue().contains("2");
+                        }
+                    });
+            rule.setUpList(list);
+            evaluated.clear();
+
+            rule.getSource().get(0).notifyPropertyChanged(2);
+            rule.getSource().get(1).notifyPropertyChanged(2);
+
+            verify(rule.getCallback()).onItemRangeChanged(list, 0, 1);
+            assertThat(evaluated.size(), is(0));
+
+            rule.getSource().get(0).setValue("element1-2");
+
+            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 1);
+            assertThat(evaluated.size(), is(1));
+        }
+
+        @Test
+        public void updateEqualItem() {
+            rule.getSource().add(new ObservableItem("element1"));
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            rule.getSource().get(5).setValue("element1-2");
+
+            verify(rule.getCallback()).onItemRangeChanged(list, 5, 1);
+        }
+
+        @Test
+        public void updateSameItemTwice() {
+            rule.getSource().add(rule.getSource().get(0));
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+
+            rule.getSource().get(0).setValue("element1-2");
+
+            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 1);
+            verify(rule.getCallback()).onItemRangeRemoved(list, 3, 1);
+            assertThat(list.size(), is(3));
+        }
+
+        @Test
+        public void updateAfterInsertAndRemove() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            rule.getSource().add(0, new ObservableItem("add1"));
+            rule.getSource().remove(2);
+            rule.getSource().get(3).setValue("element4-2");
+
+            verify(rule.getCallback()).onItemRangeChanged(list, 3, 1);
+        }
+
+        @Test
+        public void updateReplacedItem() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+
+            ObservableItem replaced = rule.getSource().get(0);
+            rule.getSource().set(0, new ObservableItem("add1"));
+            replaced.setValue("element1-2");
+            rule.getSource().get(0).setValue("add1-2");
+
+            verify(rule.getCallback()).onItemRangeRemoved(list, 0, 1);
+            assertThat(list.size(), is(3));
+        }
+    }
+
+    public static class FilterMemo {
+        @Rule
+        public ObservableItemListSource rule = new ObservableItemListSource(false);
+
+        private final List<ObservableItem> evaluated = new ArrayList<>();
+        private final Filter<ObservableItem> filter = new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                evaluated.add(element);
+                return !element.getValue().contains("2");
+            }
+        };
+
+        private FilteredReadOnlyObservableList<ObservableItem> createList(boolean memoEnabled) {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+            list.setFilterMemoEnabled(memoEnabled);
+            list.setFilter(filter); // fills the memo
+            evaluated.clear();
+            return list;
+        }
+
+        @Test
+        public void skipUnchangedItemsOnRangeChange() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList(true);
+
+            rule.getSource().setAll(0, new ArrayList<>(rule.getSource()));
+
+            assertThat(evaluated.size(), is(0));
+            verify(rule.getCallback()).onItemRangeChanged(list, 0, 4);
+        }
+
+        @Test
+        public void skipUnchangedItemsOnReset() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList(true);
+            final ObservableItem added = new ObservableItem("add1");
+
+            rule.getSource().notifyFakeChange(new Runnable() {
+                @Override
+                public void run() {
+                    rule.getSource().add(added);
+                }
+            });
+
+            assertThat(evaluated, is(Collections.singletonList(added)));
+            assertThat(list.size(), is(5));
+        }
+
+        @Test
+        public void skipUnchangedItemsOnSameFilter() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList(true);
+
+            list.setFilter(filter);
+
+            assertThat(evaluated.size(), is(0));
+        }
+
+        @Test
+        public void evaluateChangedItem() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList(true);
+            ObservableItem changed = rule.getSource().get(0);
+
+            changed.setValue("element1-2");
+            rule.getSource().setAll(0, new ArrayList<>(rule.getSource()));
+
+            assertThat(evaluated, is(Collections.singletonList(changed)));
+            assertThat(list.size(), is(3));
+        }
+
+        @Test
+        public void evaluateAllForDifferentFilter() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList(true);
+
+            list.setFilter(new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    evaluated.add(element);
+                    return true;
+                }
+            });
+
+            assertThat(evaluated.size(), is(5));
+        }
+
+        @Test
+        public void evaluateEveryTimeWhenDisabled() {
+            createList(false);
+
+            rule.getSource().setAll(0, new ArrayList<>(rule.getSource()));
+
+            assertThat(evaluated.size(), is(5));
+        }
+    }
+
+    public static class CompositeFilters {
+        @Rule
+        public NonObservableItemListSource rule = new NonObservableItemListSource(false);
+
+        private final List<String> evaluated = new ArrayList<>();
+        private CompositeFilter<String> compositeFilter; // of the random replacements
+
+        private Filter<String> excluding(final String digit) {
+            return new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    evaluated.add(element);
+                    return !element.contains(digit);
+                }
+            };
+        }
+
+        @Test
+        public void replaceClauseOfConjunction() {
+            CompositeFilter<String> filter = Filters.and(excluding("2"), excluding("4"));
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+            evaluated.clear();
+
+            list.setFilter(filter.withClause(1, excluding("5")));
+
+            // element2 failed the kept clause, and element4 is evaluated from scratch
+            assertThat(evaluated, is(Arrays.asList("element1", "element3", "element4",
+                    "element4", "element5")));
+            assertThat(list, is(Arrays.asList("element1", "element3", "element4")));
+            verify(rule.getCallback()).onItemRangeInserted(list, 2, 1);
+            verify(rule.getCallback()).onItemRangeRemoved(list, 3, 1);
+        }
+
+        @Test
+        public void replaceClauseOfDisjunction() {
+            final Filter<String> isOne = new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    evaluated.add(element);
+                    return element.equals("element1");
+                }
+            };
+            CompositeFilter<String> filter = Filters.or(isOne, Filters.not(excluding("3")));
+            FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+            evaluated.clear();
+
+            list.setFilter(filter.withClause(1, Filters.not(excluding("5"))));
+
+            // element1 passed the kept clause, and element3 is evaluated from scratch
+            assertThat(evaluated, is(Arrays.asList("element2", "element3", "element3",
+                    "element4", "element5")));
+            assertThat(list, is(Arrays.asList("element1", "element5")));
+        }
+
+        @Test
+        public void randomReplacements() {
+            final ObservableArrayListMod<String> source = rule.getSource();
+            for (int i = 0; i < 200; ++i) {
+                source.add(String.valueOf(i * 367 % 1000));
+            }
+            compositeFilter = Filters.and(excluding("1"), excluding("2"), excluding("3"));
+            final FilteredReadOnlyObservableList<String> list
+                    = new FilteredReadOnlyObservableList<>(source, compositeFilter);
+            final ListMirror<String> mirror = new ListMirror<>(list);
+            list.addOnListChangedCallback(mirror);
+
+            new RandomOperations()
+                    .add(1, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            source.set(random.nextInt(source.size()),
+                                    String.valueOf(random.nextInt(1000)));
+                        }
+                    })
+                    .add(1, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            // the witnesses follow the elements when they are moved
+                            int from = random.nextInt(source.size() - 3);
+                            source.move(from, random.nextInt(source.size() + 1), 3);
+                        }
+                    })
+                    .add(1, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            int position = random.nextInt(source.size());
+                            source.remove(position);
+                            source.add(random.nextInt(source.size() + 1),
+                                    String.valueOf(random.nextInt(1000)));
+                        }
+                    })
+                    .add(3, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            Filter<String> clause = excluding(String.valueOf(random.nextInt(10)));
+                            compositeFilter = compositeFilter.withClause(random.nextInt(3),
+                                    random.nextBoolean() ? clause : Filters.not(clause));
+                            list.setFilter(compositeFilter);
+                        }
+                    })
+                    .run(300, new Runnable() {
+                        @Override
+                        public void run() {
+                            List<String> expected = new ArrayList<>();
+                            for (final String element : source) {
+                                if (compositeFilter.execute(element)) {
+                                    expected.add(element);
+                                }
+                            }
+                            assertThat(list, is(expected));
+                            mirror.assertConsistentWith(list);
+                        }
+                    });
+        }
+    }
+
+    public static class Metrics {
+        @Rule
+        public ObservableItemListSource rule = new ObservableItemListSource(false);
+
+        private final List<String> reports = new ArrayList<>();
+        private final FilterMetrics metrics = new FilterMetrics() {
+            @Override
+            public void onFilterExecuted(int evaluationCount, long elapsedNanos) {
+                reports.add("executed " + evaluationCount);
+            }
+
+            @Override
+            public void onIndexUpdated(long elapsedNanos) {
+                reports.add("index");
+            }
+
+            @Override
+            public void onNotified(int type, int itemCount, long elapsedNanos) {
+                reports.add("notified " + type + " " + itemCount);
+            }
+
+            @Override
+            public void onFilterPassCompleted(int sourceSize, long elapsedNanos) {
+                reports.add("pass " + sourceSize);
+            }
+        };
+
+        private final Filter<ObservableItem> filter = new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return !element.getValue().contains("2");
+            }
+        };
+
+        private FilteredReadOnlyObservableList<ObservableItem> createList() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), filter);
+            rule.setUpList(list);
+            list.setMetrics(metrics);
+            return list;
+        }
+
+        @Test
+        public void propertyChange() {
+            createList();
+
+            rule.getSource().get(1).setValue("element5");
+
+            assertThat(reports, is(Arrays.asList("notified " + FilterMetrics.INSERTED + " 1",
+                    "executed 1", "index")));
+        }
+
+        @Test
+        public void rangeInsertion() {
+            createList();
+
+            rule.getSource().addAll(Arrays.asList(new ObservableItem("add1"),
+                    new ObservableItem("add2")));
+
+            assertThat(reports, is(Arrays.asList("notified " + FilterMetrics.INSERTED + " 1",
+                    "executed 2", "index")));
+        }
+
+        @Test
+        public void setFilter() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList();
+
+            list.setFilter(new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    return element.getValue().compareTo("element3") < 0;
+                }
+            });
+
+            assertThat(reports, is(Arrays.asList("notified " + FilterMetrics.INSERTED + " 1",
+                    "notified " + FilterMetrics.REMOVED + " 3", "executed 5", "index", "pass 5")));
+        }
+
+        @Test
+        public void memoizedVerdictsAreNotCounted() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList();
+            list.setFilterMemoEnabled(true);
+            list.setFilter(filter);
+            reports.clear();
+
+            list.setFilter(filter);
+
+            assertThat(reports, is(Arrays.asList("index", "pass 5")));
+        }
+
+        @Test
+        @SuppressWarnings("try") // the batch is only closed
+        public void batchedNotifications() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList();
+
+            try (FilteredReadOnlyObservableList.Batch batch = list.beginBatch()) {
+                rule.getSource().add(new ObservableItem("add1"));
+                rule.getSource().add(new ObservableItem("add3"));
+            }
+
+            assertThat(reports.get(reports.size() - 1),
+                    is("notified " + FilterMetrics.INSERTED + " 2"));
+        }
+
+        @Test
+        public void uninstall() {
+            FilteredReadOnlyObservableList<ObservableItem> list = createList();
+            list.setMetrics(null);
+
+            rule.getSource().get(1).setValue("element5");
+
+            assertThat(reports.size(), is(0));
+        }
+    }
+
+    public static class AsyncFilter {
+        @Rule
+        public ObservableItemListSource rule = new ObservableItemListSource(false);
+
+        private final QueueExecutor background = new QueueExecutor();
+        private final QueueExecutor main = new QueueExecutor();
+
+        private static Filter<ObservableItem> excluding(final String digit) {
+            return new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    return !element.getValue().contains(digit);
+                }
+            };
+        }
+
+        @Test
+        public void applyOnMainExecutor() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource(), excluding("2"));
+            rule.setUpList(list);
+
+            list.setFilterAsync(excluding("3"), background, main);
+            background.runAll();
+
+            assertThat(list.size(), is(4));
+            assertThat(list.get(1).getValue(), is("element3"));
+
+            main.runAll();
+
+            verify(rule.getCallback()).onItemRangeInserted(list, 1, 1);
+            verify(rule.getCallback()).onItemRangeRemoved(list, 2, 1);
+            assertThat(list.get(1).getValue(), is("element2"));
+        }
+
+        @Test
+        public void cancelSupersededPass() {
+            final List<ObservableItem> evaluated = new ArrayList<>();
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.setFilterAsync(new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    evaluated.add(element);
+                    return false;
+                }
+            }, background, main);
+            list.setFilterAsync(excluding("3"), background, main);
+            background.runAll();
+            main.runAll();
+
+            assertThat(evaluated.size(), is(0));
+            assertThat(list.size(), is(4));
+            verify(rule.getCallback()).onItemRangeRemoved(list, 2, 1);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void cancelBySetFilter() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            rule.setUpList(list);
+
+            list.setFilterAsync(excluding("3"), background, main);
+            background.runAll();
+            list.setFilter(excluding("4"));
+            main.runAll();
+
+            assertThat(list.size(), is(4));
+            assertThat(list.get(3).getValue(), is("element5"));
+            verify(rule.getCallback(), never())
+                    .onItemRangeRemoved((ObservableList) any(), eq(2), anyInt());
+        }
+
+        @Test
+        public void reconcileMutationsDuringPass() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+            list.addOnListChangedCallback(mirror);
+
+            list.setFilterAsync(excluding("3"), background, main);
+            background.runAll();
+            rule.getSource().add(0, new ObservableItem("add3"));
+            rule.getSource().add(0, new ObservableItem("add1"));
+            rule.getSource().get(2).setValue("element3");
+            rule.getSource().remove(4);
+            main.runAll();
+
+            List<String> values = new ArrayList<>();
+            for (final ObservableItem item : list) {
+                values.add(item.getValue());
+            }
+            assertThat(values, is(Arrays.asList("add1", "element2", "element4", "element5")));
+            mirror.assertConsistentWith(list);
+            list.close();
+        }
+
+        @Test
+        public void reevaluateElementsEnteringDuringPass() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+            ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+            list.addOnListChangedCallback(mirror);
+
+            list.setFilterAsync(excluding("3"), background, main);
+            background.runAll();
+            // changed while out of the source, where no property change is observed
+            ObservableItem inserted = rule.getSource().remove(0);
+            inserted.setValue("element13");
+            rule.getSource().add(inserted);
+            ObservableItem set = rule.getSource().remove(0);
+            set.setValue("element23");
+            rule.getSource().set(0, set);
+            main.runAll();
+
+            List<String> values = new ArrayList<>();
+            for (final ObservableItem item : list) {
+                values.add(item.getValue());
+            }
+            assertThat(values, is(Arrays.asList("element4", "element5")));
+            mirror.assertConsistentWith(list);
+            list.close();
+        }
+
+        @Test
+        public void cancelByClose() {
+            FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(rule.getSource());
+
+            list.setFilterAsync(excluding("3"), background, main);
+            list.close();
+            background.runAll();
+
+            assertThat(main.size(), is(0));
+        }
+    }
+
+    public static class ParallelEvaluation {
+        @Rule
+        public NonObservableItemListSource rule = new NonObservableItemListSource(true);
+
+        private final List<Runnable> executed = new ArrayList<>();
+        private final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.add(command);
+                command.run();
+            }
+        };
+
+        private final Filter<String> filter = new Filter<String>() {
+            @Override
+            public boolean execute(String element) {
+                return !element.contains("2");
+            }
+        };
+
+        @Test
+        public void evaluateInParallelAboveThreshold() {
+            List<String> elements = new ArrayList<>();
+            for (int i = 0; i < 5000; ++i) {
+                elements.add("element" + i);
+            }
+            rule.getSource().addAll(elements);
+
+            FilteredReadOnlyObservableList<String> list = new FilteredReadOnlyObservableList<>(
+                    rule.getSource(), filter, executor, 4096);
+            rule.setUpList(list);
+
+            assertThat(executed.size() > 0, is(true));
+            assertThat(list, is(filtered(elements, filter)));
+
+            executed.clear();
+            list.setFilter(new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    return element.endsWith("7");
+                }
+            });
+
+            assertThat(executed.size() > 0, is(true));
+            assertThat(list.size(), is(500));
+        }
+
+        @Test
+        public void evaluateSequentiallyBelowThreshold() {
+            rule.getSource().addAll(Arrays.asList("element1", "element2", "element3"));
+
+            FilteredReadOnlyObservableList<String> list = new FilteredReadOnlyObservableList<>(
+                    rule.getSource(), filter, executor, 4096);
+            rule.setUpList(list);
+
+            assertThat(executed.size(), is(0));
+            assertThat(list, is(Arrays.asList("element1", "element3")));
+        }
+
+        @Test
+        public void evaluateEmptySourceWithZeroThreshold() {
+            FilteredReadOnlyObservableList<String> list = new FilteredReadOnlyObservableList<>(
+                    rule.getSource(), filter, executor, 0);
+            rule.setUpList(list);
+
+            list.setFilter(new Filter<String>() {
+                @Override
+                public boolean execute(String element) {
+                    return true;
+                }
+            });
+            rule.getSource().notifyFakeChange();
+
+            assertThat(list.isEmpty(), is(true));
+
+            rule.getSource().add("element1");
+
+            assertThat(list, is(Collections.singletonList("element1")));
+        }
+
+        private static List<String> filtered(final List<String> elements,
+                                             final Filter<String> filter) {
+            List<String> filtered = new ArrayList<>();
+            for (final String element : elements) {
+                if (filter.execute(element)) {
+                    filtered.add(element);
+                }
+            }
+            return filtered;
+        }
+    }
+
+    public static class RandomChanges {
+        @Rule
+        public ObservableItemListSource rule = new ObservableItemListSource(true);
+
+        private Filter<ObservableItem> filter;
+        private int nextValue;
+
+        @Test
+        public void notificationsDescribeChangesExactly() {
+            final ObservableArrayListMod<ObservableItem> source = rule.getSource();
+            for (int i = 0; i < 30; ++i) {
+                source.add(newItem());
+            }
+            final FilteredReadOnlyObservableList<ObservableItem> list
+                    = new FilteredReadOnlyObservableList<>(source, moduloFilter(2));
+            final ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+            list.addOnListChangedCallback(mirror);
+            filter = moduloFilter(2);
+
+            RandomOperations.onSource(source, RandomOperations.sequence())
+                    .add(1, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            // replaces a range, keeping the element in the middle
+                            if (source.size() > 3) {
+                                int from = random.nextInt(source.size() - 2);
+                                source.setAll(from, Arrays.asList(newItem(), source.get(from + 1),
+                                        newItem()));
+                            }
+                        }
+                    })
+                    .add(1, new RandomOperations.Operation() {
+                        @Override
+                        public void run(Random random) {
+                            filter = moduloFilter(1 + random.nextInt(3));
+                            list.setFilter(filter);
+                        }
+                    })
+                    .run(3000, new Runnable() {
+                        @Override
+                        public void run() {
+                            assertThat(list, is(expected(filter)));
+                            mirror.assertConsistentWith(list);
+                        }
+                    });
+        }
+
+        private ObservableItem newItem() {
+            return new ObservableItem(String.valueOf(nextValue++));
+        }
+
+        private List<ObservableItem> expected(final Filter<ObservableItem> filter) {
+            List<ObservableItem> expected = new ArrayList<>();
+            for (final ObservableItem item : rule.getSource()) {
+                if (filter.execute(item)) {
+                    expected.add(item);
+                }
+            }
+            return expected;
+        }
+
+        private static Filter<ObservableItem> moduloFilter(final int modulus) {
+            return new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    return Integer.parseInt(element.getValue()) % modulus == 0;
+                }
+            };
+        }
+    }
+
+    public static class LazySubscription {
+        private final ObservableArrayListMod<ObservableItem> source = new ObservableArrayListMod<>();
+        private int evaluationCount;
+        private final Filter<ObservableItem> filter = new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                evaluationCount++;
+                return !element.getValue().contains("2");
+            }
+        };
+        private FilteredReadOnlyObservableList<ObservableItem> list;
+        private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+
+        @Before
+        @SuppressWarnings("unchecked")
+        public void setUp() {
+            for (int i = 1; i <= 5; ++i) {
+                source.add(new ObservableItem("element" + i));
+            }
+            list = new FilteredReadOnlyObservableList<>(source, filter);
+            list.setLazySubscriptionEnabled(true);
+            callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        }
+
+        @Test
+        public void unobservedListDoesNoWork() {
+            evaluationCount = 0;
+
+            source.add(new ObservableItem("add1"));
+            source.get(0).setValue("changed");
+
+            assertThat(source.getCallbackCount(), is(0));
+            assertThat(evaluationCount, is(0));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void attachBringsContentsUpToDate() {
+            source.add(new ObservableItem("add1"));
+            source.remove(0);
+            source.get(0).setValue("changed");
+
+            list.addOnListChangedCallback(callback);
+
+            assertThat(list, is(Arrays.asList(source.get(0), source.get(1), source.get(2),
+                    source.get(3), source.get(4))));
+            verify(callback, never()).onChanged((ObservableList) any());
+
+            source.add(new ObservableItem("add2"));
+            source.get(0).setValue("element2");
+
+            verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+            verify(callback).onItemRangeRemoved(list, 0, 1);
+        }
+
+        @Test
+        public void removingLastCallbackDetaches() {
+            list.addOnListChangedCallback(callback);
+            assertThat(source.getCallbackCount(), is(1));
+
+            list.removeOnListChangedCallback(callback);
+            assertThat(source.getCallbackCount(), is(0));
+        }
+
+        @Test
+        public void filterSetWhileDetachedIsAppliedOnAttach() {
+            evaluationCount = 0;
+            list.setFilter(new Filter<ObservableItem>() {
+                @Override
+                public boolean execute(ObservableItem element) {
+                    evaluationCount++;
+                    return element.getValue().contains("3");
+                }
+            });
+            assertThat(evaluationCount, is(0));
+
+            list.addOnListChangedCallback(callback);
+
+            assertThat(list, is(Collections.singletonList(source.get(2))));
+        }
+
+        @Test
+        public void disablingAttaches() {
+            source.add(new ObservableItem("add1"));
+
+            list.setLazySubscriptionEnabled(false);
+
+            assertThat(list.size(), is(5));
+            assertThat(source.getCallbackCount(), is(1));
+        }
+
+        @Test
+        public void closedListStaysDetached() {
+            list.close();
+
+            list.addOnListChangedCallback(callback);
+
+            assertThat(source.getCallbackCount(), is(0));
+        }
     }
 
     public static class EmptySource {
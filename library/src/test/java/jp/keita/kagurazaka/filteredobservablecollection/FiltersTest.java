@@ -0,0 +1,115 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FiltersTest {
+    private final List<String> evaluated = new ArrayList<>();
+
+    private Filter<Integer> recording(final String name, final boolean result) {
+        return new Filter<Integer>() {
+            @Override
+            public boolean execute(Integer element) {
+                evaluated.add(name);
+                return result;
+            }
+        };
+    }
+
+    private static Filter<Integer> propertyAware(final int... ids) {
+        return new PropertyAwareFilter<Integer>() {
+            @Override
+            public int[] getDependentPropertyIds() {
+                return ids;
+            }
+
+            @Override
+            public boolean execute(Integer element) {
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void andFailsFastInCostOrder() {
+        CompositeFilter<Integer> filter = Filters.and(
+                Filters.weighted(recording("expensive", false), 10f, 0.1f),
+                Filters.weighted(recording("cheap", true), 1f, 0.9f),
+                Filters.weighted(recording("selective", false), 1f, 0.1f));
+
+        assertThat(filter.execute(0), is(false));
+        assertThat(evaluated, is(Arrays.asList("selective")));
+    }
+
+    @Test
+    public void orPassesFastInCostOrder() {
+        CompositeFilter<Integer> filter = Filters.or(
+                Filters.weighted(recording("rare", true), 1f, 0.1f),
+                Filters.weighted(recording("common", false), 1f, 0.9f));
+
+        assertThat(filter.execute(0), is(true));
+        assertThat(evaluated, is(Arrays.asList("common", "rare")));
+    }
+
+    @Test
+    public void decidingClause() {
+        CompositeFilter<Integer> and = Filters.and(recording("a", true), recording("b", false));
+        CompositeFilter<Integer> or = Filters.or(recording("a", false), recording("b", false));
+
+        assertThat(and.decidingClause(0), is(1));
+        assertThat(or.decidingClause(0), is(-1));
+    }
+
+    @Test
+    public void not() {
+        Filter<Integer> filter = Filters.not(recording("a", true));
+
+        assertThat(filter.execute(0), is(false));
+        assertThat(Filters.passRateOf(Filters.not(Filters.weighted(filter, 1f, 0.2f))),
+                is(0.8f));
+    }
+
+    @Test
+    public void nestedCostAndPassRate() {
+        CompositeFilter<Integer> filter = Filters.and(
+                Filters.weighted(recording("a", true), 2f, 0.5f),
+                Filters.weighted(recording("b", true), 4f, 0.5f));
+
+        assertThat(Filters.costOf(filter), is(4f));
+        assertThat(Filters.passRateOf(filter), is(0.25f));
+    }
+
+    @Test
+    public void dependentPropertyIds() {
+        CompositeFilter<Integer> aware = Filters.and(propertyAware(1), propertyAware(2, 3));
+        CompositeFilter<Integer> opaque = Filters.and(propertyAware(1), recording("a", true));
+
+        assertThat(aware.getDependentPropertyIds(), is(new int[]{1, 2, 3}));
+        assertThat(opaque.getDependentPropertyIds(), nullValue());
+    }
+
+    @Test
+    public void indexOfReplacedClause() {
+        Filter<Integer> a = recording("a", true);
+        Filter<Integer> b = recording("b", true);
+        CompositeFilter<Integer> filter = Filters.and(a, b);
+
+        assertThat(CompositeFilter.indexOfReplacedClause(filter,
+                filter.withClause(1, recording("c", true))), is(1));
+        assertThat(CompositeFilter.indexOfReplacedClause(filter, Filters.or(a, b)), is(-1));
+        assertThat(CompositeFilter.indexOfReplacedClause(filter, Filters.and(a, b)), is(-1));
+        assertThat(CompositeFilter.indexOfReplacedClause(filter, a), is(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPassRate() {
+        Filters.weighted(recording("a", true), 1f, 1.5f);
+    }
+}
@@ -0,0 +1,72 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class IdentityIntMapTest {
+
+    @Test
+    public void distinguishesEqualKeys() {
+        IdentityIntMap map = new IdentityIntMap();
+        String key1 = new String("key");
+        String key2 = new String("key");
+
+        map.put(key1, 1);
+        map.put(key2, 2);
+
+        assertThat(map.size(), is(2));
+        assertThat(map.get(key1), is(1));
+        assertThat(map.get(key2), is(2));
+        assertThat(map.get("other"), is(IdentityIntMap.MISSING));
+    }
+
+    @Test
+    public void randomOperations() {
+        final IdentityIntMap map = new IdentityIntMap();
+        final Map<Object, Integer> expected = new IdentityHashMap<>();
+        final List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            keys.add(new Object());
+        }
+
+        new RandomOperations()
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        Object key = keys.get(random.nextInt(keys.size()));
+                        map.remove(key);
+                        expected.remove(key);
+                    }
+                })
+                .add(2, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        Object key = keys.get(random.nextInt(keys.size()));
+                        int value = random.nextInt(1000);
+                        map.put(key, value);
+                        expected.put(key, value);
+                    }
+                })
+                .run(20000, new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+
+        assertThat(map.size(), is(expected.size()));
+        for (final Object key : keys) {
+            Integer value = expected.get(key);
+            assertThat(map.get(key), is(value == null ? IdentityIntMap.MISSING : value));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.Observable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ItemIndexTest {
+    private ItemIndex index;
+    private List<Object> source;
+
+    @Before
+    public void setUp() {
+        index = new ItemIndex(Mockito.mock(Observable.OnPropertyChangedCallback.class));
+        source = new ArrayList<>();
+    }
+
+    @Test
+    public void positionsFollowInsertionsAcrossBlocks() {
+        for (int i = 0; i < ItemIndex.BLOCK_SIZE * 3; ++i) {
+            source.add(new ObservableItem(String.valueOf(i)));
+        }
+        index.insert(0, source, source.size());
+
+        source.add(1, "plain");
+        source.add(2, new ObservableItem("head"));
+        index.insert(1, source, 2);
+
+        assertPositions();
+    }
+
+    @Test
+    public void positionsFollowRemovalsAndMoves() {
+        for (int i = 0; i < ItemIndex.BLOCK_SIZE * 3; ++i) {
+            source.add(new ObservableItem(String.valueOf(i)));
+        }
+        index.insert(0, source, source.size());
+
+        index.remove(10, ItemIndex.BLOCK_SIZE * 2);
+        source.subList(10, 10 + ItemIndex.BLOCK_SIZE * 2).clear();
+        assertPositions();
+
+        index.move(0, source.size(), 5);
+        List<Object> moved = new ArrayList<>(source.subList(0, 5));
+        source.subList(0, 5).clear();
+        source.addAll(moved);
+        assertPositions();
+
+        // a target within the moved range leaves the slots where they are
+        index.move(3, 5, 4);
+        assertPositions();
+    }
+
+    @Test
+    public void duplicatesAreSubscribedOnce() {
+        ObservableItem shared = new ObservableItem("shared");
+        for (int i = 0; i < ItemIndex.BLOCK_SIZE * 2; ++i) {
+            source.add(i % 100 == 7 ? shared : new ObservableItem(String.valueOf(i)));
+        }
+        index.insert(0, source, source.size());
+
+        assertThat(shared.getCallbackCount(), is(1));
+        assertPositions();
+
+        index.remove(7, 1);
+        source.remove(7);
+
+        assertThat(shared.getCallbackCount(), is(1));
+        assertPositions();
+
+        index.clear();
+
+        assertThat(shared.getCallbackCount(), is(0));
+        assertThat(index.indexOf(shared), is(-1));
+    }
+
+    @Test
+    public void replaceResubscribes() {
+        ObservableItem old = new ObservableItem("old");
+        ObservableItem replacement = new ObservableItem("new");
+        source.add(old);
+        index.insert(0, source, 1);
+
+        source.set(0, replacement);
+        index.replace(0, source, 1);
+
+        assertThat(old.getCallbackCount(), is(0));
+        assertThat(replacement.getCallbackCount(), is(1));
+        assertThat(index.indexOf(old), is(-1));
+        assertThat(index.indexOf(replacement), is(0));
+    }
+
+    // compares every occurrence with a linear search over the reference source
+    private void assertPositions() {
+        assertThat(index.size(), is(source.size()));
+        for (final Object item : source) {
+            if (!(item instanceof Observable)) {
+                continue;
+            }
+            Observable observable = (Observable) item;
+            int expected = indexOf(observable, 0);
+            for (int actual = index.indexOf(observable); actual >= 0;
+                 actual = index.nextIndexOf(observable, actual)) {
+                assertThat(actual, is(expected));
+                expected = indexOf(observable, expected + 1);
+            }
+            assertThat(expected, is(-1));
+        }
+    }
+
+    private int indexOf(final Object item, int from) {
+        for (int i = from; i < source.size(); ++i) {
+            if (source.get(i) == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
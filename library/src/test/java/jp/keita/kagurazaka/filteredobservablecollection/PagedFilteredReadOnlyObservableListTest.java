@@ -0,0 +1,272 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class PagedFilteredReadOnlyObservableListTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private PagedFilteredReadOnlyObservableList<ObservableItem> list;
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+    private int evaluationCount;
+    private int nextValue;
+    private Filter<ObservableItem> currentFilter; // of the random operations
+
+    private final Filter<ObservableItem> evenFilter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            evaluationCount++;
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 100; ++i) {
+            source.add(newItem());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (list != null) {
+            list.close();
+        }
+    }
+
+    @Test
+    public void evaluatesOnlyUntilWindowIsFull() {
+        setUpList(2, 3);
+
+        assertThat(values(), is(Arrays.asList("4", "6", "8")));
+        assertThat(evaluationCount, is(9));
+    }
+
+    @Test
+    public void loadMore() {
+        setUpList(2, 3);
+
+        list.loadMore();
+
+        verify(callback).onItemRangeInserted(list, 3, 3);
+        assertThat(values(), is(Arrays.asList("4", "6", "8", "10", "12", "14")));
+        assertThat(list.getLimit(), is(6));
+    }
+
+    @Test
+    public void hasMore() {
+        setUpList(45, 5);
+
+        assertThat(list.size(), is(5));
+        assertThat(list.hasMore(), is(false));
+
+        source.add(0, new ObservableItem("0"));
+
+        assertThat(list.hasMore(), is(true));
+    }
+
+    @Test
+    public void insertBeforeWindowShiftsIt() {
+        setUpList(2, 3);
+
+        source.add(0, new ObservableItem("100"));
+
+        verify(callback).onItemRangeRemoved(list, 2, 1);
+        verify(callback).onItemRangeInserted(list, 0, 1);
+        assertThat(values(), is(Arrays.asList("2", "4", "6")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void insertBeyondFrontierIsNotEvaluated() {
+        setUpList(2, 3);
+        evaluationCount = 0;
+
+        source.add(new ObservableItem("100"));
+
+        assertThat(evaluationCount, is(0));
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void observesOnlyEvaluatedHead() {
+        setUpList(2, 3);
+
+        assertThat(observedCount(), is(9));
+        assertThat(source.get(8).getCallbackCount(), is(1));
+
+        list.loadMore();
+
+        assertThat(observedCount(), is(15));
+
+        list.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return true;
+            }
+        });
+
+        assertThat(observedCount(), is(8));
+
+        list.close();
+
+        assertThat(observedCount(), is(0));
+        list = null;
+    }
+
+    @Test
+    public void removeInsideWindowRefillsIt() {
+        setUpList(2, 3);
+
+        source.remove(6);
+
+        verify(callback).onItemRangeRemoved(list, 1, 1);
+        verify(callback).onItemRangeInserted(list, 2, 1);
+        assertThat(values(), is(Arrays.asList("4", "8", "10")));
+    }
+
+    @Test
+    public void updateItem() {
+        setUpList(2, 3);
+
+        source.get(6).notifyChange();
+
+        verify(callback).onItemRangeChanged(list, 1, 1);
+
+        source.get(6).setValue("7");
+
+        verify(callback).onItemRangeRemoved(list, 1, 1);
+        assertThat(values(), is(Arrays.asList("4", "8", "10")));
+    }
+
+    @Test
+    public void setFilterReportsOnlyDifference() {
+        setUpList(0, 3);
+
+        list.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return !element.getValue().equals("2");
+            }
+        });
+
+        verify(callback).onItemRangeRemoved(list, 1, 2);
+        verify(callback).onItemRangeInserted(list, 1, 2);
+        assertThat(values(), is(Arrays.asList("0", "1", "3")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOffset() {
+        new PagedFilteredReadOnlyObservableList<>(source, evenFilter, -1, 3);
+    }
+
+    @Test
+    public void randomOperations() {
+        final int offset = 5;
+        list = new PagedFilteredReadOnlyObservableList<>(source, evenFilter, offset, 7);
+        final ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+        currentFilter = evenFilter;
+
+        RandomOperations.onSource(source, RandomOperations.sequence())
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (random.nextInt(10) == 0) {
+                            list.loadMore();
+                        } else {
+                            list.hasMore();
+                        }
+                    }
+                })
+                .add(2, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (random.nextInt(4) == 0) {
+                            final int modulus = 1 + random.nextInt(3);
+                            currentFilter = new Filter<ObservableItem>() {
+                                @Override
+                                public boolean execute(ObservableItem element) {
+                                    return Integer.parseInt(element.getValue()) % modulus == 0;
+                                }
+                            };
+                            list.setFilter(currentFilter);
+                        }
+                    }
+                })
+                .run(3000, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertThat(list, is(expected(currentFilter, offset, list.getLimit())));
+                        mirror.assertConsistentWith(list);
+
+                        // the observed elements are the evaluated head of the source
+                        int observedCount = observedCount();
+                        for (int i = 0; i < source.size(); ++i) {
+                            assertThat(source.get(i).getCallbackCount(),
+                                    is(i < observedCount ? 1 : 0));
+                        }
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setUpList(int offset, int limit) {
+        list = new PagedFilteredReadOnlyObservableList<>(source, evenFilter, offset, limit);
+        callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        list.addOnListChangedCallback(callback);
+    }
+
+    private int observedCount() {
+        int count = 0;
+        for (final ObservableItem item : source) {
+            count += item.getCallbackCount();
+        }
+        return count;
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private List<String> values() {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : list) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+
+    private List<ObservableItem> expected(final Filter<ObservableItem> filter, int offset,
+                                          int limit) {
+        List<ObservableItem> matches = new ArrayList<>();
+        for (final ObservableItem item : source) {
+            if (filter.execute(item)) {
+                matches.add(item);
+            }
+        }
+        int from = Math.min(offset, matches.size());
+        return matches.subList(from, Math.min(from + limit, matches.size()));
+    }
+}
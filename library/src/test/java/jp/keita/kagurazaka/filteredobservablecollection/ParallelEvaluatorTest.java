@@ -0,0 +1,135 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.QueueExecutor;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelEvaluatorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private final Filter<Integer> multipleOfThree = new Filter<Integer>() {
+        @Override
+        public boolean execute(Integer element) {
+            return element % 3 == 0;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void evaluateEveryChunk() {
+        List<Integer> source = range(100003);
+
+        boolean[] passed = ParallelEvaluator.evaluate(source, multipleOfThree, executor);
+
+        assertEvaluated(passed, source.size());
+    }
+
+    @Test
+    public void evaluateSmallSource() {
+        List<Integer> source = new ArrayList<>();
+        source.add(3);
+        source.add(4);
+
+        boolean[] passed = ParallelEvaluator.evaluate(source, multipleOfThree, executor);
+
+        assertThat(passed[0], is(true));
+        assertThat(passed[1], is(false));
+    }
+
+    @Test
+    public void evaluateEmptySource() {
+        boolean[] passed = ParallelEvaluator.evaluate(new ArrayList<Integer>(), multipleOfThree,
+                executor);
+
+        assertThat(passed.length, is(0));
+    }
+
+    @Test
+    public void evaluateOnCallingThreadExecutor() {
+        List<Integer> source = range(10000);
+
+        boolean[] passed = ParallelEvaluator.evaluate(source, multipleOfThree, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        assertEvaluated(passed, source.size());
+    }
+
+    @Test
+    public void evaluateWithoutWaitingForQueuedTasks() {
+        List<Integer> source = range(10000);
+        QueueExecutor saturated = new QueueExecutor();
+
+        boolean[] passed = ParallelEvaluator.evaluate(source, multipleOfThree, saturated);
+
+        assertEvaluated(passed, source.size());
+        // the tasks which start late find no chunk left
+        saturated.runAll();
+        assertEvaluated(passed, source.size());
+    }
+
+    @Test
+    public void evaluateRejectedChunksOnCallingThread() {
+        List<Integer> source = range(10000);
+
+        boolean[] passed = ParallelEvaluator.evaluate(source, multipleOfThree, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        assertEvaluated(passed, source.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagateFailure() {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            source.add(i);
+        }
+
+        ParallelEvaluator.evaluate(source, new Filter<Integer>() {
+            @Override
+            public boolean execute(Integer element) {
+                if (element == 10) {
+                    throw new IllegalStateException();
+                }
+                return true;
+            }
+        }, executor);
+    }
+
+    private static List<Integer> range(int size) {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            source.add(i);
+        }
+        return source;
+    }
+
+    private static void assertEvaluated(final boolean[] passed, int size) {
+        assertThat(passed.length, is(size));
+        for (int i = 0; i < passed.length; ++i) {
+            assertThat(passed[i], is(i % 3 == 0));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RankIndexTest {
+    private RankIndex index;
+    private List<Boolean> expected;
+
+    @Before
+    public void setUp() {
+        index = new RankIndex();
+        expected = new ArrayList<>();
+    }
+
+    @Test
+    public void rankAndSelect() {
+        index.resize(5);
+        index.set(1, true);
+        index.set(3, true);
+        index.set(4, true);
+
+        assertThat(index.count(), is(3));
+        assertThat(index.rank(0), is(0));
+        assertThat(index.rank(2), is(1));
+        assertThat(index.rank(4), is(2));
+        assertThat(index.select(0), is(1));
+        assertThat(index.select(1), is(3));
+        assertThat(index.select(2), is(4));
+    }
+
+    @Test
+    public void insertShiftsMembers() {
+        index.resize(3);
+        index.set(0, true);
+        index.set(2, true);
+
+        index.insert(1, 2);
+
+        assertThat(index.size(), is(5));
+        assertThat(index.isMember(0), is(true));
+        assertThat(index.isMember(1), is(false));
+        assertThat(index.isMember(2), is(false));
+        assertThat(index.isMember(4), is(true));
+        assertThat(index.rank(4), is(1));
+    }
+
+    @Test
+    public void removeShiftsMembers() {
+        index.resize(5);
+        index.set(0, true);
+        index.set(2, true);
+        index.set(4, true);
+
+        index.remove(1, 2);
+
+        assertThat(index.size(), is(3));
+        assertThat(index.count(), is(2));
+        assertThat(index.rank(2), is(1));
+        assertThat(index.select(1), is(2));
+    }
+
+    @Test
+    public void randomOperations() {
+        runRandomOperations(4, 3, Integer.MAX_VALUE, 1, 2000, 1);
+    }
+
+    @Test
+    public void insertAndRemoveAcrossBlocks() {
+        index.resize(RankIndex.BLOCK_SIZE * 2);
+        index.set(0, true);
+        index.set(RankIndex.BLOCK_SIZE * 2 - 1, true);
+        for (int i = 0; i < RankIndex.BLOCK_SIZE * 2; ++i) {
+            expected.add(i == 0 || i == RankIndex.BLOCK_SIZE * 2 - 1);
+        }
+
+        index.insert(1, RankIndex.BLOCK_SIZE * 3);
+        index.set(RankIndex.BLOCK_SIZE, true);
+        for (int i = 0; i < RankIndex.BLOCK_SIZE * 3; ++i) {
+            expected.add(1, false);
+        }
+        expected.set(RankIndex.BLOCK_SIZE, true);
+        verifyAgainstExpected();
+
+        int from = RankIndex.BLOCK_SIZE / 2;
+        index.remove(from, RankIndex.BLOCK_SIZE * 4);
+        expected.subList(from, from + RankIndex.BLOCK_SIZE * 4).clear();
+        verifyAgainstExpected();
+
+        index.remove(0, index.size());
+        assertThat(index.size(), is(0));
+        assertThat(index.count(), is(0));
+        index.insert(0, 1);
+        index.set(0, true);
+        assertThat(index.select(0), is(0));
+    }
+
+    @Test
+    public void randomOperationsAcrossBlocks() {
+        runRandomOperations(RankIndex.BLOCK_SIZE * 2, RankIndex.BLOCK_SIZE * 2,
+                RankIndex.BLOCK_SIZE, 200, 500, 10);
+        verifyAgainstExpected();
+    }
+
+    // inserts, removes and moves up to the specified numbers of slots, and sets some bits
+    private void runRandomOperations(final int maxInserted, final int maxRemoved,
+                                     final int maxMoved, final int setCount, int steps,
+                                     final int checkInterval) {
+        new RandomOperations()
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        insert(random, maxInserted);
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (expected.isEmpty()) {
+                            insert(random, maxInserted);
+                            return;
+                        }
+                        int position = random.nextInt(expected.size());
+                        int count = 1 + random.nextInt(Math.min(maxRemoved,
+                                expected.size() - position));
+                        index.remove(position, count);
+                        expected.subList(position, position + count).clear();
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (expected.isEmpty()) {
+                            insert(random, maxInserted);
+                            return;
+                        }
+                        int position = random.nextInt(expected.size());
+                        int count = 1 + random.nextInt(Math.min(maxMoved,
+                                expected.size() - position));
+                        int toPosition = random.nextInt(expected.size() + 1);
+                        if (toPosition < position || position + count < toPosition) {
+                            index.move(position, toPosition, count);
+                            List<Boolean> moved
+                                    = new ArrayList<>(expected.subList(position, position + count));
+                            expected.subList(position, position + count).clear();
+                            expected.addAll(toPosition < position ? toPosition
+                                    : toPosition - count, moved);
+                        }
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (expected.isEmpty()) {
+                            insert(random, maxInserted);
+                            return;
+                        }
+                        for (int i = 0; i < setCount; ++i) {
+                            int position = random.nextInt(expected.size());
+                            boolean member = random.nextBoolean();
+                            index.set(position, member);
+                            expected.set(position, member);
+                        }
+                    }
+                })
+                .run(steps, new Runnable() {
+                    private int step;
+
+                    @Override
+                    public void run() {
+                        if (step++ % checkInterval == 0) {
+                            verifyAgainstExpected();
+                        }
+                    }
+                });
+    }
+
+    private void insert(final Random random, int maxInserted) {
+        int position = random.nextInt(expected.size() + 1);
+        int count = 1 + random.nextInt(maxInserted);
+        index.insert(position, count);
+        for (int i = 0; i < count; ++i) {
+            expected.add(position, false);
+        }
+    }
+
+    private void verifyAgainstExpected() {
+        assertThat(index.size(), is(expected.size()));
+        int rank = 0;
+        for (int i = 0; i < expected.size(); ++i) {
+            assertThat(index.rank(i), is(rank));
+            assertThat(index.isMember(i), is(expected.get(i)));
+            if (expected.get(i)) {
+                assertThat(index.select(rank), is(i));
+                rank++;
+            }
+        }
+        assertThat(index.count(), is(rank));
+    }
+}
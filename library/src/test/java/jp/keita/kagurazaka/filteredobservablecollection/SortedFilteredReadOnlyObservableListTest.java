@@ -0,0 +1,391 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SortedFilteredReadOnlyObservableListTest {
+    private static final Comparator<ObservableItem> BY_VALUE = new Comparator<ObservableItem>() {
+        @Override
+        public int compare(ObservableItem lhs, ObservableItem rhs) {
+            return lhs.getValue().compareTo(rhs.getValue());
+        }
+    };
+
+    private final Filter<ObservableItem> filter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            return !element.getValue().contains("2");
+        }
+    };
+
+    private ObservableArrayListMod<ObservableItem> source;
+    private SortedFilteredReadOnlyObservableList<ObservableItem> list;
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+    private int nextValue;
+    private Filter<ObservableItem> currentFilter; // of the random operations
+    private Comparator<ObservableItem> currentComparator;
+
+    @Before
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        source.add(new ObservableItem("element3"));
+        source.add(new ObservableItem("element5"));
+        source.add(new ObservableItem("element2"));
+        source.add(new ObservableItem("element1"));
+        source.add(new ObservableItem("element4"));
+    }
+
+    @After
+    public void tearDown() {
+        if (list != null) {
+            list.close();
+        }
+    }
+
+    @Test
+    public void constructSorted() {
+        setUpList(BY_VALUE);
+
+        assertThat(values(), is(Arrays.asList("element1", "element3", "element4", "element5")));
+    }
+
+    @Test
+    public void insertAtSortedPosition() {
+        setUpList(BY_VALUE);
+
+        source.add(0, new ObservableItem("element35"));
+
+        verify(callback).onItemRangeInserted(list, 2, 1);
+        assertThat(list.get(2).getValue(), is("element35"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void insertButFiltered() {
+        setUpList(BY_VALUE);
+
+        source.add(new ObservableItem("element22"));
+
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+        assertThat(list.size(), is(4));
+    }
+
+    @Test
+    public void remove() {
+        setUpList(BY_VALUE);
+
+        source.remove(1);
+
+        verify(callback).onItemRangeRemoved(list, 3, 1);
+        assertThat(values(), is(Arrays.asList("element1", "element3", "element4")));
+    }
+
+    @Test
+    public void removeRange() {
+        setUpList(BY_VALUE);
+
+        source.removeRange(0, 4);
+
+        verify(callback).onItemRangeRemoved(list, 1, 1);
+        verify(callback).onItemRangeRemoved(list, 2, 1);
+        verify(callback).onItemRangeRemoved(list, 0, 1);
+        assertThat(values(), is(Collections.singletonList("element4")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sourceMoveKeepsOrder() {
+        setUpList(BY_VALUE);
+
+        source.move(0, 5, 2);
+
+        verify(callback, never())
+                .onItemRangeMoved((ObservableList) any(), anyInt(), anyInt(), anyInt());
+        assertThat(values(), is(Arrays.asList("element1", "element3", "element4", "element5")));
+
+        source.remove(4);
+
+        verify(callback).onItemRangeRemoved(list, 3, 1);
+    }
+
+    @Test
+    public void propertyChangeMovesItem() {
+        setUpList(BY_VALUE);
+
+        source.get(3).setValue("element9");
+
+        verify(callback).onItemRangeMoved(list, 0, 4, 1);
+        assertThat(values(), is(Arrays.asList("element3", "element4", "element5", "element9")));
+
+        source.get(3).setValue("element0");
+
+        verify(callback).onItemRangeMoved(list, 3, 0, 1);
+        assertThat(values(), is(Arrays.asList("element0", "element3", "element4", "element5")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void propertyChangeKeepingPosition() {
+        setUpList(BY_VALUE);
+
+        source.get(0).setValue("element35");
+
+        verify(callback).onItemRangeChanged(list, 1, 1);
+        verify(callback, never())
+                .onItemRangeMoved((ObservableList) any(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void propertyChangeAppearsAndDisappears() {
+        setUpList(BY_VALUE);
+
+        source.get(2).setValue("element0");
+
+        verify(callback).onItemRangeInserted(list, 0, 1);
+
+        source.get(1).setValue("element52");
+
+        verify(callback).onItemRangeRemoved(list, 4, 1);
+        assertThat(values(), is(Arrays.asList("element0", "element1", "element3", "element4")));
+    }
+
+    @Test
+    public void replaceItem() {
+        setUpList(BY_VALUE);
+
+        source.set(1, new ObservableItem("element0"));
+
+        verify(callback).onItemRangeRemoved(list, 3, 1);
+        verify(callback).onItemRangeInserted(list, 0, 1);
+        assertThat(values(), is(Arrays.asList("element0", "element1", "element3", "element4")));
+    }
+
+    @Test
+    public void setFilter() {
+        setUpList(BY_VALUE);
+
+        list.setFilter(new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                return !element.getValue().contains("3");
+            }
+        });
+
+        verify(callback).onItemRangeRemoved(list, 1, 1);
+        verify(callback).onItemRangeInserted(list, 1, 1);
+        assertThat(values(), is(Arrays.asList("element1", "element2", "element4", "element5")));
+    }
+
+    @Test
+    public void setComparatorMovesReorderedElements() {
+        final Comparator<ObservableItem> fivesFirst = new Comparator<ObservableItem>() {
+            @Override
+            public int compare(ObservableItem lhs, ObservableItem rhs) {
+                return Boolean.compare(!lhs.getValue().contains("5"),
+                        !rhs.getValue().contains("5"));
+            }
+        };
+        setUpList(fivesFirst);
+        assertThat(values(), is(Arrays.asList("element5", "element3", "element1", "element4")));
+
+        list.setComparator(new Comparator<ObservableItem>() {
+            @Override
+            public int compare(ObservableItem lhs, ObservableItem rhs) {
+                int result = fivesFirst.compare(lhs, rhs);
+                return result != 0 ? result : BY_VALUE.compare(lhs, rhs);
+            }
+        });
+
+        verify(callback).onItemRangeMoved(list, 1, 3, 1);
+        verify(callback, never()).onItemRangeChanged(list, 1, 2);
+        assertThat(values(), is(Arrays.asList("element5", "element1", "element3", "element4")));
+    }
+
+    @Test
+    public void setComparatorReplacesRangeWhenManyElementsMove() {
+        source.clear();
+        for (int i = 0; i < 100; ++i) {
+            source.add(new ObservableItem(String.format("element%03d", i)));
+        }
+        setUpList(BY_VALUE);
+        int size = list.size();
+
+        list.setComparator(Collections.reverseOrder(BY_VALUE));
+
+        verify(callback).onItemRangeRemoved(list, 0, size);
+        verify(callback).onItemRangeInserted(list, 0, size);
+        assertSortedView(filter, Collections.reverseOrder(BY_VALUE));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void setSameComparator() {
+        setUpList(BY_VALUE);
+
+        list.setComparator(BY_VALUE);
+
+        verify(callback, never())
+                .onItemRangeChanged((ObservableList) any(), anyInt(), anyInt());
+        verify(callback, never())
+                .onItemRangeMoved((ObservableList) any(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void propertyChangeOfDuplicatedItem() {
+        source.add(source.get(3));
+        setUpList(BY_VALUE);
+        assertThat(values(), is(Arrays.asList(
+                "element1", "element1", "element3", "element4", "element5")));
+
+        source.get(3).setValue("element9");
+
+        verify(callback).onItemRangeRemoved(list, 0, 2);
+        verify(callback).onItemRangeInserted(list, 3, 2);
+        assertThat(values(), is(Arrays.asList(
+                "element3", "element4", "element5", "element9", "element9")));
+    }
+
+    @Test
+    public void propertyChangeAfterManyInsertionsAtTop() {
+        setUpList(BY_VALUE);
+        // each insertion halves the gap between the labels at the top
+        for (int i = 0; i < 100; ++i) {
+            source.add(new ObservableItem(String.format("element0%03d", 999 - i)));
+        }
+        ObservableItem item = source.get(0);
+        int fromIndex = list.indexOf(item);
+
+        item.setValue("element45");
+
+        int toIndex = list.indexOf(item);
+        verify(callback).onItemRangeMoved(list, fromIndex, toIndex + 1, 1);
+        assertThat(values().get(toIndex - 1), is("element4"));
+        assertSortedView(filter, BY_VALUE);
+    }
+
+    @Test
+    public void randomOperations() {
+        source.clear();
+        for (int i = 0; i < 30; ++i) {
+            source.add(newItem());
+        }
+        currentComparator = moduloComparator(7);
+        currentFilter = filter;
+        list = new SortedFilteredReadOnlyObservableList<>(source, filter, currentComparator);
+        final ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+
+        RandomOperations.onSource(source, RandomOperations.sequence())
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        // duplicates an instance which is already in the source
+                        if (!source.isEmpty()) {
+                            source.add(random.nextInt(source.size() + 1),
+                                    source.get(random.nextInt(source.size())));
+                        }
+                    }
+                })
+                .add(1, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (random.nextBoolean()) {
+                            currentComparator = moduloComparator(2 + random.nextInt(6));
+                            list.setComparator(currentComparator);
+                        } else {
+                            final int digit = random.nextInt(10);
+                            currentFilter = new Filter<ObservableItem>() {
+                                @Override
+                                public boolean execute(ObservableItem element) {
+                                    return !element.getValue().contains(String.valueOf(digit));
+                                }
+                            };
+                            list.setFilter(currentFilter);
+                        }
+                    }
+                })
+                .run(3000, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertSortedView(currentFilter, currentComparator);
+                        mirror.assertConsistentWith(list);
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setUpList(final Comparator<ObservableItem> comparator) {
+        list = new SortedFilteredReadOnlyObservableList<>(source, filter, comparator);
+        callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        list.addOnListChangedCallback(callback);
+    }
+
+    private List<String> values() {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : list) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+
+    private void assertSortedView(final Filter<ObservableItem> filter,
+                                  final Comparator<ObservableItem> comparator) {
+        IdentityHashMap<ObservableItem, Integer> expected = new IdentityHashMap<>();
+        int expectedSize = 0;
+        for (final ObservableItem item : source) {
+            if (filter.execute(item)) {
+                Integer count = expected.get(item);
+                expected.put(item, count == null ? 1 : count + 1);
+                expectedSize++;
+            }
+        }
+        assertThat(list.size(), is(expectedSize));
+        for (int i = 0; i < list.size(); ++i) {
+            Integer count = expected.get(list.get(i));
+            assertTrue(count != null && count > 0);
+            expected.put(list.get(i), count - 1);
+            if (i > 0) {
+                assertTrue(comparator.compare(list.get(i - 1), list.get(i)) <= 0);
+            }
+        }
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private static Comparator<ObservableItem> moduloComparator(final int modulus) {
+        return new Comparator<ObservableItem>() {
+            @Override
+            public int compare(ObservableItem lhs, ObservableItem rhs) {
+                return Integer.valueOf(Integer.parseInt(lhs.getValue()) % modulus)
+                        .compareTo(Integer.parseInt(rhs.getValue()) % modulus);
+            }
+        };
+    }
+}
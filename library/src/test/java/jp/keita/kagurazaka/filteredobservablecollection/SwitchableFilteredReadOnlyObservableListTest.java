@@ -0,0 +1,162 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import android.databinding.ObservableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ListMirror;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+import jp.keita.kagurazaka.filteredobservablecollection.util.RandomOperations;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SwitchableFilteredReadOnlyObservableListTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private SwitchableFilteredReadOnlyObservableList<ObservableItem> list;
+    private ObservableList.OnListChangedCallback<ObservableList<ObservableItem>> callback;
+    private final Map<String, Filter<ObservableItem>> filters = new LinkedHashMap<>();
+    private int evaluationCount;
+    private int nextValue;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 6; ++i) {
+            source.add(newItem());
+        }
+        filters.put("all", modulus(1));
+        filters.put("even", modulus(2));
+        filters.put("third", modulus(3));
+        list = new SwitchableFilteredReadOnlyObservableList<>(source, filters, "all");
+        callback = Mockito.mock(ObservableList.OnListChangedCallback.class);
+        list.addOnListChangedCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        list.close();
+    }
+
+    @Test
+    public void switchEvaluatesNoFilter() {
+        evaluationCount = 0;
+
+        list.switchTo("even");
+
+        assertThat(evaluationCount, is(0));
+        assertThat(list.getActiveName(), is("even"));
+        assertThat(values(), is(Arrays.asList("0", "2", "4")));
+        verify(callback).onItemRangeRemoved(list, 1, 1);
+        verify(callback).onItemRangeRemoved(list, 2, 1);
+        verify(callback).onItemRangeRemoved(list, 3, 1);
+    }
+
+    @Test
+    public void switchReportsDifference() {
+        list.switchTo("even");
+        ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+
+        list.switchTo("third");
+
+        assertThat(values(), is(Arrays.asList("0", "3")));
+        assertThat(mirror.getNotificationCount(), is(3));
+        mirror.assertConsistentWith(list);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void switchToActiveFilter() {
+        list.switchTo("all");
+
+        verify(callback, never()).onItemRangeRemoved((ObservableList) any(), anyInt(), anyInt());
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void forwardsOnlyChangesOfActiveFilter() {
+        list.switchTo("even");
+
+        source.get(1).setValue("9");
+
+        verify(callback, never()).onItemRangeInserted((ObservableList) any(), anyInt(), anyInt());
+
+        source.get(1).setValue("8");
+
+        verify(callback).onItemRangeInserted(list, 1, 1);
+        assertThat(values(), is(Arrays.asList("0", "8", "2", "4")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void switchToUnknownFilter() {
+        list.switchTo("unknown");
+    }
+
+    @Test
+    public void randomOperations() {
+        final ListMirror<ObservableItem> mirror = new ListMirror<>(list);
+        list.addOnListChangedCallback(mirror);
+        final List<String> names = new ArrayList<>(filters.keySet());
+
+        RandomOperations.onSource(source, RandomOperations.sequence())
+                .add(3, new RandomOperations.Operation() {
+                    @Override
+                    public void run(Random random) {
+                        list.switchTo(names.get(random.nextInt(names.size())));
+                    }
+                })
+                .run(2000, new Runnable() {
+                    @Override
+                    public void run() {
+                        List<ObservableItem> expected = new ArrayList<>();
+                        for (final ObservableItem item : source) {
+                            if (filters.get(list.getActiveName()).execute(item)) {
+                                expected.add(item);
+                            }
+                        }
+                        assertThat(list, is(expected));
+                        mirror.assertConsistentWith(list);
+                    }
+                });
+    }
+
+    private Filter<ObservableItem> modulus(final int modulus) {
+        return new Filter<ObservableItem>() {
+            @Override
+            public boolean execute(ObservableItem element) {
+                evaluationCount++;
+                return Integer.parseInt(element.getValue()) % modulus == 0;
+            }
+        };
+    }
+
+    private ObservableItem newItem() {
+        return new ObservableItem(String.valueOf(nextValue++));
+    }
+
+    private List<String> values() {
+        List<String> values = new ArrayList<>();
+        for (final ObservableItem item : list) {
+            values.add(item.getValue());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,126 @@
+package jp.keita.kagurazaka.filteredobservablecollection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableArrayListMod;
+import jp.keita.kagurazaka.filteredobservablecollection.util.ObservableItem;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class WeakSubscriptionsTest {
+    private ObservableArrayListMod<ObservableItem> source;
+    private int evaluationCount;
+
+    private final Filter<ObservableItem> evenFilter = new Filter<ObservableItem>() {
+        @Override
+        public boolean execute(ObservableItem element) {
+            evaluationCount++;
+            return Integer.parseInt(element.getValue()) % 2 == 0;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        source = new ObservableArrayListMod<>();
+        for (int i = 0; i < 4; ++i) {
+            source.add(new ObservableItem(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void reachableListIsUpdated() {
+        FilteredReadOnlyObservableList<ObservableItem> list =
+                new FilteredReadOnlyObservableList<>(source, evenFilter);
+        list.setWeakSubscriptionEnabled(true);
+
+        source.add(new ObservableItem("4"));
+        source.get(1).setValue("6");
+
+        assertThat(list.size(), is(4));
+        list.close();
+        assertThat(source.getCallbackCount(), is(0));
+    }
+
+    @Test
+    public void collectedListIsUnsubscribedOnNextChange() {
+        int reclaimedCount = WeakSubscriptions.getReclaimedCount();
+        awaitCollection(openAndForget(true));
+        assertThat(source.getCallbackCount(), is(1));
+
+        evaluationCount = 0;
+        source.add(new ObservableItem("4"));
+        source.get(0).setValue("8");
+        source.add(new ObservableItem("6"));
+
+        assertThat(evaluationCount, is(0));
+        assertThat(source.getCallbackCount(), is(0));
+        assertThat(WeakSubscriptions.getReclaimedCount(), is(reclaimedCount + 1));
+    }
+
+    @Test
+    public void sourceHoldsListStronglyByDefault() {
+        WeakReference<?> reference = openAndForget(false);
+        System.gc();
+
+        evaluationCount = 0;
+        source.add(new ObservableItem("4"));
+
+        assertThat(reference.get() != null, is(true));
+        assertThat(evaluationCount, is(1));
+        assertThat(source.getCallbackCount(), is(1));
+    }
+
+    @Test
+    public void disablingRestoresStrongSubscription() {
+        FilteredReadOnlyObservableList<ObservableItem> list =
+                new FilteredReadOnlyObservableList<>(source, evenFilter);
+        list.setWeakSubscriptionEnabled(true);
+        list.setWeakSubscriptionEnabled(false);
+        WeakReference<?> reference = new WeakReference<>(list);
+        list = null;
+        System.gc();
+
+        evaluationCount = 0;
+        source.get(0).setValue("2");
+        source.add(new ObservableItem("4"));
+
+        assertThat(reference.get() != null, is(true));
+        assertThat(evaluationCount, is(2));
+        assertThat(source.getCallbackCount(), is(1));
+        assertThat(source.get(0).getCallbackCount(), is(1));
+    }
+
+    @Test
+    public void collectedListLeavesElementsOnTheirNextChange() {
+        awaitCollection(openAndForget(true));
+        assertThat(source.get(0).getCallbackCount(), is(1));
+
+        source.get(0).setValue("8");
+
+        assertThat(source.get(0).getCallbackCount(), is(0));
+        assertThat(source.get(1).getCallbackCount(), is(1));
+    }
+
+    private WeakReference<?> openAndForget(boolean weak) {
+        FilteredReadOnlyObservableList<ObservableItem> list =
+                new FilteredReadOnlyObservableList<>(source, evenFilter);
+        list.setWeakSubscriptionEnabled(weak);
+        return new WeakReference<>(list);
+    }
+
+    private static void awaitCollection(final WeakReference<?> reference) {
+        for (int i = 0; i < 50 && reference.get() != null; ++i) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        assertThat(reference.get() == null, is(true));
+    }
+}
@@ -0,0 +1,82 @@
+package jp.keita.kagurazaka.filteredobservablecollection.util;
+
+import android.databinding.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Replays the change notifications of an {@link ObservableList} onto a copy, so that tests can
+ * check that the notifications describe the changes exactly.
+ * <p>
+ * Inserted and changed positions are only known to hold some new element, so
+ * {@link #assertConsistentWith(List)} checks that every untouched element ended up at the same
+ * position as in the actual list.
+ */
+public class ListMirror<T> extends ObservableList.OnListChangedCallback<ObservableList<T>> {
+    private static final Object UNKNOWN = new Object();
+
+    private final List<Object> mirror;
+    private int notificationCount;
+
+    public ListMirror(final List<T> initial) {
+        mirror = new ArrayList<Object>(initial);
+    }
+
+    public int getNotificationCount() {
+        return notificationCount;
+    }
+
+    public void assertConsistentWith(final List<T> actual) {
+        assertThat(mirror.size(), is(actual.size()));
+        for (int i = 0; i < mirror.size(); ++i) {
+            if (mirror.get(i) != UNKNOWN) {
+                assertThat(actual.get(i), sameInstance(mirror.get(i)));
+            }
+            mirror.set(i, actual.get(i));
+        }
+    }
+
+    @Override
+    public void onChanged(ObservableList<T> sender) {
+        notificationCount++;
+        mirror.clear();
+        mirror.addAll(sender);
+    }
+
+    @Override
+    public void onItemRangeChanged(ObservableList<T> sender, int positionStart, int itemCount) {
+        notificationCount++;
+        for (int i = positionStart; i < positionStart + itemCount; ++i) {
+            mirror.set(i, UNKNOWN);
+        }
+    }
+
+    @Override
+    public void onItemRangeInserted(ObservableList<T> sender, int positionStart, int itemCount) {
+        notificationCount++;
+        for (int i = 0; i < itemCount; ++i) {
+            mirror.add(positionStart, UNKNOWN);
+        }
+    }
+
+    @Override
+    public void onItemRangeMoved(ObservableList<T> sender, int fromPosition, int toPosition,
+                                 int itemCount) {
+        notificationCount++;
+        List<Object> moved = new ArrayList<>(mirror.subList(fromPosition, fromPosition + itemCount));
+        mirror.subList(fromPosition, fromPosition + itemCount).clear();
+        int actualToPosition = toPosition < fromPosition ? toPosition : toPosition - itemCount;
+        mirror.addAll(actualToPosition, moved);
+    }
+
+    @Override
+    public void onItemRangeRemoved(ObservableList<T> sender, int positionStart, int itemCount) {
+        notificationCount++;
+        mirror.subList(positionStart, positionStart + itemCount).clear();
+    }
+}
@@ -22,6 +22,10 @@ public class ObservableArrayListMod<T> extends ObservableArrayList<T> {
         super.removeOnListChangedCallback(listener);
     }
 
+    public int getCallbackCount() {
+        return registry.size();
+    }
+
     @Override
     public void removeRange(int fromIndex, int toIndex) {
         super.removeRange(fromIndex, toIndex);
@@ -66,7 +70,7 @@ public class ObservableArrayListMod<T> extends ObservableArrayList<T> {
                     actualToPosition = fromPosition;
                 }
 
-                removeAll(willBeMoved);
+                subList(fromPosition, fromPosition + itemCount).clear();
                 addAll(actualToPosition, willBeMoved);
             }
         });
@@ -78,6 +82,16 @@ public class ObservableArrayListMod<T> extends ObservableArrayList<T> {
         }
     }
 
+    public void notifyFakeChange(final Runnable change) {
+        withOutNotification(new Action() {
+            @Override
+            public void call() {
+                change.run();
+            }
+        });
+        notifyFakeChange();
+    }
+
     @SuppressWarnings("unchecked")
     public void notifyFakeChange() {
         for (final OnListChangedCallback callback : registry) {
@@ -4,6 +4,7 @@ import android.databinding.BaseObservable;
 
 public class ObservableItem extends BaseObservable {
     private String value;
+    private int callbackCount;
 
     public ObservableItem(final String value) {
         this.value = value;
@@ -24,6 +25,22 @@ public class ObservableItem extends BaseObservable {
         notifyPropertyChanged(1);
     }
 
+    public int getCallbackCount() {
+        return callbackCount;
+    }
+
+    @Override
+    public void addOnPropertyChangedCallback(OnPropertyChangedCallback callback) {
+        callbackCount++;
+        super.addOnPropertyChangedCallback(callback);
+    }
+
+    @Override
+    public void removeOnPropertyChangedCallback(OnPropertyChangedCallback callback) {
+        callbackCount--;
+        super.removeOnPropertyChangedCallback(callback);
+    }
+
     @Override
     public int hashCode() {
         return value.hashCode();
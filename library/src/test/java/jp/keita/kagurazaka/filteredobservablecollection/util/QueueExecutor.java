@@ -0,0 +1,31 @@
+package jp.keita.kagurazaka.filteredobservablecollection.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} which queues tasks until a test runs them explicitly.
+ */
+public class QueueExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable command) {
+        tasks.add(command);
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public void runNext() {
+        tasks.remove().run();
+    }
+
+    public void runAll() {
+        while (!tasks.isEmpty()) {
+            runNext();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package jp.keita.kagurazaka.filteredobservablecollection.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded driver which runs randomly chosen operations and checks the state after each step, so
+ * that a failing sequence is reproduced on every run.
+ * <p>
+ * Each operation is chosen with a probability proportional to its weight. {@link #onSource} adds
+ * the structural and property changes of a source list, to which a test adds the operations of
+ * the list under test.
+ */
+public class RandomOperations {
+    private final Random random = new Random(42);
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Returns a driver which inserts, removes, replaces and moves the elements of the source and
+     * changes their values, taking new values from the specified generator.
+     */
+    public static RandomOperations onSource(final ObservableArrayListMod<ObservableItem> source,
+                                            final Values values) {
+        return new RandomOperations()
+                .add(1, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        source.add(random.nextInt(source.size() + 1),
+                                new ObservableItem(values.next(random)));
+                    }
+                })
+                .add(1, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        source.addAll(random.nextInt(source.size() + 1), Arrays.asList(
+                                new ObservableItem(values.next(random)),
+                                new ObservableItem(values.next(random)),
+                                new ObservableItem(values.next(random))));
+                    }
+                })
+                .add(1, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        int size = source.size();
+                        if (size > 0) {
+                            int from = random.nextInt(size);
+                            int count = random.nextInt(Math.min(4, size - from) + 1);
+                            source.removeRange(from, from + count);
+                        }
+                    }
+                })
+                .add(1, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (!source.isEmpty()) {
+                            source.set(random.nextInt(source.size()),
+                                    new ObservableItem(values.next(random)));
+                        }
+                    }
+                })
+                .add(1, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        int size = source.size();
+                        if (size > 0) {
+                            int from = random.nextInt(size);
+                            int count = 1 + random.nextInt(Math.min(3, size - from));
+                            source.move(from, random.nextInt(size + 1), count);
+                        }
+                    }
+                })
+                .add(2, new Operation() {
+                    @Override
+                    public void run(Random random) {
+                        if (!source.isEmpty()) {
+                            source.get(random.nextInt(source.size()))
+                                    .setValue(values.next(random));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns a generator of the decimal strings of 0, 1, 2, and so on.
+     */
+    public static Values sequence() {
+        return new Values() {
+            private int nextValue;
+
+            @Override
+            public String next(Random random) {
+                return String.valueOf(nextValue++);
+            }
+        };
+    }
+
+    /**
+     * Adds an operation chosen with a probability proportional to {@code weight}.
+     */
+    public RandomOperations add(int weight, final Operation operation) {
+        for (int i = 0; i < weight; ++i) {
+            operations.add(operation);
+        }
+        return this;
+    }
+
+    /**
+     * Runs the specified number of randomly chosen operations, running {@code check} after each.
+     */
+    public void run(int steps, final Runnable check) {
+        for (int step = 0; step < steps; ++step) {
+            operations.get(random.nextInt(operations.size())).run(random);
+            check.run();
+        }
+    }
+
+    public interface Operation {
+        void run(Random random);
+    }
+
+    public interface Values {
+        String next(Random random);
+    }
+}
@@ -6,38 +6,65 @@ import android.databinding.ObservableList;
 import android.view.View;
 import android.widget.AdapterView;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import jp.keita.kagurazaka.filteredobservablecollection.Filter;
-import jp.keita.kagurazaka.filteredobservablecollection.FilteredReadOnlyObservableList;
+import jp.keita.kagurazaka.filteredobservablecollection.PropertyAwareFilter;
+import jp.keita.kagurazaka.filteredobservablecollection.SwitchableFilteredReadOnlyObservableList;
 import me.tatarka.bindingcollectionadapter.ItemView;
 
 public class ViewModel {
-    private static final Filter<TodoItem> FILTER_ALL = new Filter<TodoItem>() {
+    private static final Filter<TodoItem> FILTER_ALL = new PropertyAwareFilter<TodoItem>() {
+        @Override
+        public int[] getDependentPropertyIds() {
+            return new int[0];
+        }
+
         @Override
         public boolean execute(TodoItem element) {
             return true;
         }
     };
 
-    private static final Filter<TodoItem> FILTER_ACTIVE = new Filter<TodoItem>() {
+    private static final Filter<TodoItem> FILTER_ACTIVE = new PropertyAwareFilter<TodoItem>() {
+        @Override
+        public int[] getDependentPropertyIds() {
+            return new int[]{jp.keita.kagurazaka.filteredobservablecollection.sample.BR.isCompleted};
+        }
+
         @Override
         public boolean execute(TodoItem element) {
             return !element.getIsCompleted();
         }
     };
 
-    private static final Filter<TodoItem> FILTER_COMPLETED = new Filter<TodoItem>() {
+    private static final Filter<TodoItem> FILTER_COMPLETED = new PropertyAwareFilter<TodoItem>() {
+        @Override
+        public int[] getDependentPropertyIds() {
+            return new int[]{jp.keita.kagurazaka.filteredobservablecollection.sample.BR.isCompleted};
+        }
+
         @Override
         public boolean execute(TodoItem element) {
             return element.getIsCompleted();
         }
     };
 
+    private static final Map<String, Filter<TodoItem>> FILTERS = new LinkedHashMap<>();
+
+    static {
+        FILTERS.put("all", FILTER_ALL);
+        FILTERS.put("active", FILTER_ACTIVE);
+        FILTERS.put("completed", FILTER_COMPLETED);
+    }
+
     public final ObservableList<TodoItem> allTodoItemList = new ObservableArrayList<>();
 
     public final ItemView itemView = ItemView.of(jp.keita.kagurazaka.filteredobservablecollection.sample.BR.todoItem, R.layout.item_todo);
 
-    public final FilteredReadOnlyObservableList<TodoItem> currentList
-            = new FilteredReadOnlyObservableList<>(allTodoItemList, FILTER_ALL);
+    public final SwitchableFilteredReadOnlyObservableList<TodoItem> currentList
+            = new SwitchableFilteredReadOnlyObservableList<>(allTodoItemList, FILTERS, "all");
 
     public final AdapterView.OnItemSelectedListener onViewModeChanged
             = new AdapterView.OnItemSelectedListener() {
@@ -45,13 +72,13 @@ public class ViewModel {
         public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
             switch (position) {
                 case 0:
-                    currentList.setFilter(FILTER_ALL);
+                    currentList.switchTo("all");
                     break;
                 case 1:
-                    currentList.setFilter(FILTER_ACTIVE);
+                    currentList.switchTo("active");
                     break;
                 case 2:
-                    currentList.setFilter(FILTER_COMPLETED);
+                    currentList.switchTo("completed");
                     break;
                 default:
                     break;
@@ -60,7 +87,7 @@ public class ViewModel {
 
         @Override
         public void onNothingSelected(AdapterView<?> parent) {
-            currentList.setFilter(FILTER_ALL);
+            currentList.switchTo("all");
         }
     };
 